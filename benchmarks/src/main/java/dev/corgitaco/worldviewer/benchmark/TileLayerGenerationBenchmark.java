@@ -0,0 +1,101 @@
+package dev.corgitaco.worldviewer.benchmark;
+
+import dev.corgitaco.worldviewer.client.tile.tilelayer.TileLayer;
+import dev.corgitaco.worldviewer.common.storage.DataTileManager;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.server.level.ServerLevel;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiles per second each layer's {@link TileLayer.GenerationFactory} builds at a tile size and LOD, with the GC profiler reporting
+ * the allocation rate.
+ * <p>
+ * Every invocation builds a tile no previous one touched, so the data tile cache never serves it. Each LOD is built from scratch,
+ * refining the LOD below it in place is not part of the measurement.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@State(Scope.Thread)
+public class TileLayerGenerationBenchmark {
+
+    private static final int MAX_TILE_WORLD_X = 1 << 22;
+
+    @Param({"biomes", "heights", "caves", "slime_chunks", "structures"})
+    public String layer;
+
+    @Param({"128", "512", "2048"})
+    public int size;
+
+    // 0 is the finest sample resolution of a tile of this size, every LOD above doubles it.
+    @Param({"0", "1", "2", "3"})
+    public int lod;
+
+    private Path saveDir;
+    private DataTileManager dataTileManager;
+    private TileLayer.GenerationFactory<? extends TileLayer> generationFactory;
+    private int targetSampleResolution;
+    private int sampleResolution;
+    private int tileWorldX;
+    private int tileWorldZ;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ServerLevel level = WorldViewerBenchmarks.level();
+        this.saveDir = Files.createTempDirectory("worldviewer-benchmark");
+        this.dataTileManager = new DataTileManager(this.saveDir, level.getChunkSource().getGenerator(), level.getChunkSource().getGenerator().getBiomeSource(), level, level.getSeed());
+        this.generationFactory = TileLayer.FACTORY_REGISTRY.stream()
+                .filter(entry -> entry.name().equals(this.layer))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown tile layer " + this.layer))
+                .generationFactory();
+        this.targetSampleResolution = Math.max(1, this.size >> 6);
+        this.sampleResolution = this.targetSampleResolution << this.lod;
+    }
+
+    @Benchmark
+    public void generateTile(Blackhole blackhole) {
+        int tileWorldX = this.tileWorldX;
+        int tileWorldZ = this.tileWorldZ;
+        this.tileWorldX += this.size;
+        if (this.tileWorldX >= MAX_TILE_WORLD_X) {
+            this.tileWorldX = 0;
+            this.tileWorldZ += this.size;
+        }
+
+        this.dataTileManager.prefetch(tileWorldX, tileWorldZ, this.size, this.sampleResolution);
+        TileLayer tileLayer = this.dataTileManager.sample(() -> make(this.generationFactory, tileWorldX, tileWorldZ));
+        blackhole.consume(tileLayer.image());
+        tileLayer.release();
+    }
+
+    private <T extends TileLayer> T make(TileLayer.GenerationFactory<T> generationFactory, int tileWorldX, int tileWorldZ) {
+        return generationFactory.make(this.dataTileManager, 63, tileWorldX, tileWorldZ, this.size, this.sampleResolution, this.targetSampleResolution, new LongOpenHashSet(), null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.dataTileManager.close();
+        // Data tiles may still be flushing, whatever they leave behind is in the system's temp directory.
+        FileUtils.deleteQuietly(this.saveDir.toFile());
+    }
+}
@@ -0,0 +1,85 @@
+package dev.corgitaco.worldviewer.benchmark;
+
+import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.screens.TitleScreen;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.level.GameRules;
+import net.minecraft.world.level.GameType;
+import net.minecraft.world.level.LevelSettings;
+import net.minecraft.world.level.WorldDataConfiguration;
+import net.minecraft.world.level.levelgen.WorldOptions;
+import net.minecraft.world.level.levelgen.presets.WorldPresets;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Creates a fresh singleplayer world once the dev client reaches the title screen, runs the JMH suites against its overworld and
+ * stops the client.
+ * <p>
+ * {@code -Dworldviewer.benchmark.seed} is the world's seed, {@code -Dworldviewer.benchmark.include} selects the benchmarks by regex
+ * and {@code -Dworldviewer.benchmark.result} is where the JSON results are written.
+ */
+public class WorldViewerBenchmarks implements ClientModInitializer {
+
+    private static final String LEVEL_NAME = "benchmark-world";
+
+    private static volatile ServerLevel level;
+    private static boolean worldCreated;
+
+    @Override
+    public void onInitializeClient() {
+        ClientTickEvents.END_CLIENT_TICK.register(minecraft -> {
+            if (!worldCreated && minecraft.screen instanceof TitleScreen) {
+                worldCreated = true;
+                createWorld(minecraft);
+            }
+        });
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            level = server.overworld();
+            Thread runner = new Thread(WorldViewerBenchmarks::run, "WorldViewer-Benchmarks");
+            runner.setDaemon(true);
+            runner.start();
+        });
+    }
+
+    public static ServerLevel level() {
+        ServerLevel level = WorldViewerBenchmarks.level;
+        if (level == null) {
+            throw new IllegalStateException("Benchmarks must run inside the benchmark client.");
+        }
+        return level;
+    }
+
+    private static void createWorld(Minecraft minecraft) {
+        long seed = Long.getLong("worldviewer.benchmark.seed", 1234L);
+        LevelSettings settings = new LevelSettings(LEVEL_NAME, GameType.SPECTATOR, false, Difficulty.PEACEFUL, true, new GameRules(), WorldDataConfiguration.DEFAULT);
+        minecraft.createWorldOpenFlows().createFreshLevel(LEVEL_NAME, settings, new WorldOptions(seed, true, false), WorldPresets::createNormalWorldDimensions);
+    }
+
+    private static void run() {
+        try {
+            Options options = new OptionsBuilder()
+                    .include(System.getProperty("worldviewer.benchmark.include", TileLayerGenerationBenchmark.class.getSimpleName()))
+                    // Forked JVMs would run without the mod's mixins and without a level, JMH warns about this in its output.
+                    .forks(0)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(System.getProperty("worldviewer.benchmark.result", "jmh-result.json"))
+                    .build();
+            new Runner(options).run();
+        } catch (RunnerException e) {
+            e.printStackTrace();
+        } finally {
+            Minecraft minecraft = Minecraft.getInstance();
+            minecraft.execute(minecraft::stop);
+        }
+    }
+}
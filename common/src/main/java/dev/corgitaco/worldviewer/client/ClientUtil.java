@@ -4,6 +4,8 @@ import com.mojang.blaze3d.platform.InputConstants;
 import com.mojang.blaze3d.platform.NativeImage;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.blaze3d.vertex.VertexConsumer;
+import dev.corgitaco.worldviewer.client.tile.atlas.TextureRegion;
+import dev.corgitaco.worldviewer.client.tile.metrics.TileMetrics;
 import dev.corgitaco.worldviewer.mixin.KeyMappingAccess;
 import dev.corgitaco.worldviewer.mixin.NativeImageAccessor;
 import net.minecraft.client.KeyMapping;
@@ -11,6 +13,7 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiGraphics;
 import org.joml.Matrix4f;
 import org.lwjgl.glfw.GLFW;
+import org.lwjgl.system.MemoryUtil;
 
 public class ClientUtil {
 
@@ -31,9 +34,36 @@ public class ClientUtil {
         if (((NativeImageAccessor)(Object) nativeImage).wvGetPixels() == 0) {
             throw new IllegalArgumentException("Image was not allocated on NativeImage construction.");
         }
+        ImageLeakTracker.onAllocate(nativeImage);
         return nativeImage;
     }
 
+    /**
+     * Copies every {@code step}th pixel of every {@code step}th row of {@code image} into {@code samples}, reading the source a row
+     * at a time straight from native memory.
+     */
+    public static void copySamples(NativeImage image, int step, NativeImage samples) {
+        long from = ((NativeImageAccessor) (Object) image).wvGetPixels();
+        long to = ((NativeImageAccessor) (Object) samples).wvGetPixels();
+        long sampleRowBytes = (long) image.getWidth() * step * 4;
+        int sampledWidth = samples.getWidth();
+        for (int z = 0; z < samples.getHeight(); z++) {
+            long fromRow = from + z * sampleRowBytes;
+            long toRow = to + (long) z * sampledWidth * 4;
+            for (int x = 0; x < sampledWidth; x++) {
+                MemoryUtil.memPutInt(toRow + x * 4L, MemoryUtil.memGetInt(fromRow + (long) x * step * 4));
+            }
+        }
+    }
+
+    /**
+     * Uploads all of {@code samples} to {@code level} of the bound texture at the given offset, called on the render thread.
+     */
+    public static void uploadSamples(NativeImage samples, int level, int xOffset, int yOffset) {
+        TileMetrics.recordUpload();
+        samples.upload(level, xOffset, yOffset, 0, 0, samples.getWidth(), samples.getHeight(), false, true, false, false);
+    }
+
     public static void drawOutlineWithWidth(GuiGraphics guiGraphics, int x1, int y1, int x2, int y2, int lineWidth, int color) {
         // Bottom Line
         guiGraphics.fill(x1, y1 + -lineWidth, x2, y1 + lineWidth, color);
@@ -57,6 +87,10 @@ public class ClientUtil {
         blit(vertexConsumer, matrixStack, opacity, x, y, width, height, uOffset, vOffset, width, height, textureWidth, textureHeight);
     }
 
+    public static void blitRegion(VertexConsumer vertexConsumer, PoseStack matrixStack, float opacity, int x, int y, int width, int height, TextureRegion region) {
+        innerBlit(vertexConsumer, matrixStack.last().pose(), opacity, x, x + width, y, y + height, 0, region.minU(), region.maxU(), region.minV(), region.maxV());
+    }
+
     private static void innerBlit(VertexConsumer vertexConsumer, PoseStack matrixStack, float opacity, int x1, int x2, int y1, int y2, int blitOffset, int uWidth, int vHeight, float uOffset, float vOffset, int textureWidth, int textureHeight) {
         innerBlit(vertexConsumer, matrixStack.last().pose(), opacity, x1, x2, y1, y2, blitOffset, (uOffset + 0.0F) / (float) textureWidth, (uOffset + (float) uWidth) / (float) textureWidth, (vOffset + 0.0F) / (float) textureHeight, (vOffset + (float) vHeight) / (float) textureHeight);
     }
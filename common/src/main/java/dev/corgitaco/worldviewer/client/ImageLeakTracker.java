@@ -0,0 +1,134 @@
+package dev.corgitaco.worldviewer.client;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import dev.corgitaco.worldviewer.common.WorldViewer;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the images the mod allocates until they are closed, opt in with {@code -Dworldviewer.imageLeaks=true}.
+ * <p>
+ * Every open image is counted per layer, the stack of only every {@code -Dworldviewer.imageLeaks.sampleRate}th allocation and close
+ * is captured. When disabled every hook returns on a constant and nothing is kept.
+ */
+public final class ImageLeakTracker {
+
+    public static final boolean ENABLED = Boolean.getBoolean("worldviewer.imageLeaks");
+    private static final int SAMPLE_RATE = Math.max(1, Integer.getInteger("worldviewer.imageLeaks.sampleRate", 16));
+    private static final String UNASSIGNED = "unassigned";
+
+    private static final Reference2ObjectOpenHashMap<NativeImage, OpenImage> OPEN = new Reference2ObjectOpenHashMap<>();
+    private static final Object2IntOpenHashMap<String> CLOSE_SITES = new Object2IntOpenHashMap<>();
+    private static final AtomicInteger SAMPLE_COUNTER = new AtomicInteger();
+
+    private ImageLeakTracker() {
+    }
+
+    public static void onAllocate(NativeImage image) {
+        if (!ENABLED) {
+            return;
+        }
+        Throwable site = sample() ? new Throwable("Image allocated") : null;
+        synchronized (OPEN) {
+            OPEN.put(image, new OpenImage(UNASSIGNED, (long) image.getWidth() * image.getHeight() * image.format().components(), site));
+        }
+    }
+
+    /**
+     * Attributes an open image to {@code layer} in reports.
+     */
+    public static void assign(@Nullable NativeImage image, String layer) {
+        if (!ENABLED || image == null) {
+            return;
+        }
+        synchronized (OPEN) {
+            OpenImage open = OPEN.get(image);
+            if (open != null && !open.layer().equals(layer)) {
+                OPEN.put(image, new OpenImage(layer, open.bytes(), open.site()));
+            }
+        }
+    }
+
+    public static void onClose(NativeImage image) {
+        if (!ENABLED) {
+            return;
+        }
+        String closeSite = sample() ? callerOf(new Throwable().getStackTrace()) : null;
+        synchronized (OPEN) {
+            OPEN.remove(image);
+            if (closeSite != null) {
+                CLOSE_SITES.addTo(closeSite, 1);
+            }
+        }
+    }
+
+    /**
+     * @return a line per layer with its open images, then the sampled allocation sites of open images and the sampled close sites,
+     * most frequent first. Empty when disabled.
+     */
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+        if (!ENABLED) {
+            return lines;
+        }
+        Object2IntOpenHashMap<String> counts = new Object2IntOpenHashMap<>();
+        Object2IntOpenHashMap<String> bytes = new Object2IntOpenHashMap<>();
+        Object2IntOpenHashMap<String> allocationSites = new Object2IntOpenHashMap<>();
+        Object2IntOpenHashMap<String> closeSites;
+        synchronized (OPEN) {
+            for (OpenImage open : OPEN.values()) {
+                counts.addTo(open.layer(), 1);
+                bytes.addTo(open.layer(), (int) Math.min(Integer.MAX_VALUE, open.bytes() >> 10));
+                if (open.site() != null) {
+                    allocationSites.addTo(open.layer() + " from " + callerOf(open.site().getStackTrace()), 1);
+                }
+            }
+            closeSites = new Object2IntOpenHashMap<>(CLOSE_SITES);
+        }
+        counts.object2IntEntrySet().forEach(entry -> lines.add("%s: %s open images, %s KiB".formatted(entry.getKey(), entry.getIntValue(), bytes.getInt(entry.getKey()))));
+        appendSites(lines, "Sampled allocation sites of open images:", allocationSites);
+        appendSites(lines, "Sampled close sites:", closeSites);
+        return lines;
+    }
+
+    public static void logReport() {
+        if (ENABLED) {
+            report().forEach(WorldViewer.LOGGER::info);
+        }
+    }
+
+    private static void appendSites(List<String> lines, String header, Object2IntOpenHashMap<String> sites) {
+        if (sites.isEmpty()) {
+            return;
+        }
+        lines.add(header);
+        sites.object2IntEntrySet().stream()
+                .sorted((a, b) -> Integer.compare(b.getIntValue(), a.getIntValue()))
+                .forEach(entry -> lines.add("  %sx %s".formatted(entry.getIntValue(), entry.getKey())));
+    }
+
+    private static boolean sample() {
+        return SAMPLE_COUNTER.getAndIncrement() % SAMPLE_RATE == 0;
+    }
+
+    /**
+     * @return the first frame outside of this class, NativeImage, which the mixin hooks run in, and the allocating classes.
+     */
+    private static String callerOf(StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            String className = element.getClassName();
+            if (!className.equals(ImageLeakTracker.class.getName()) && !className.equals(NativeImage.class.getName()) && !className.equals(ClientUtil.class.getName()) && !className.equals(NativeImagePool.class.getName())) {
+                return element.toString();
+            }
+        }
+        return "unknown";
+    }
+
+    private record OpenImage(String layer, long bytes, @Nullable Throwable site) {
+    }
+}
@@ -0,0 +1,113 @@
+package dev.corgitaco.worldviewer.client;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import dev.corgitaco.worldviewer.mixin.NativeImageAccessor;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the RGBA images of released tiles to hand them out again instead of allocating native memory for every tile and LOD.
+ * <p>
+ * Images are pooled by their exact size, which for tiles is one of the few powers of two {@code tileSize / sampleResolution} takes.
+ * At most {@code -Dworldviewer.imagePool.maxMiB} (64 by default) of idle images are kept, anything released beyond that is closed.
+ */
+public final class NativeImagePool {
+
+    private static final long MAX_POOLED_BYTES = (long) Integer.getInteger("worldviewer.imagePool.maxMiB", 64) << 20;
+
+    private static final Long2ObjectOpenHashMap<ArrayDeque<NativeImage>> FREE = new Long2ObjectOpenHashMap<>();
+    private static final ReferenceOpenHashSet<NativeImage> POOLED = new ReferenceOpenHashSet<>();
+    private static final AtomicLong NATIVE_BYTES = new AtomicLong();
+    private static long pooledBytes;
+
+    private NativeImagePool() {
+    }
+
+    /**
+     * @param clear whether the image must be fully transparent, otherwise it may hold the pixels of a previous tile.
+     */
+    public static NativeImage acquire(int width, int height, boolean clear) {
+        NativeImage image;
+        synchronized (FREE) {
+            ArrayDeque<NativeImage> free = FREE.get(sizeClass(width, height));
+            image = free != null ? free.pollFirst() : null;
+            if (image != null) {
+                POOLED.remove(image);
+                pooledBytes -= bytes(image);
+            }
+        }
+        if (image == null) {
+            image = ClientUtil.createImage(width, height, clear);
+            NATIVE_BYTES.addAndGet(bytes(image));
+            return image;
+        }
+        if (clear) {
+            MemoryUtil.memSet(((NativeImageAccessor) (Object) image).wvGetPixels(), 0, bytes(image));
+        }
+        ImageLeakTracker.onAllocate(image);
+        return image;
+    }
+
+    /**
+     * Gives an image back for reuse, closing it instead if the pool is full. The caller must hold the last use of the image.
+     */
+    public static void release(NativeImage image) {
+        if (image.format() != NativeImage.Format.RGBA || ((NativeImageAccessor) (Object) image).wvGetPixels() == 0) {
+            image.close();
+            return;
+        }
+        long bytes = bytes(image);
+        synchronized (FREE) {
+            if (POOLED.contains(image)) {
+                return;
+            }
+            if (pooledBytes + bytes <= MAX_POOLED_BYTES) {
+                POOLED.add(image);
+                FREE.computeIfAbsent(sizeClass(image.getWidth(), image.getHeight()), key -> new ArrayDeque<>()).addFirst(image);
+                pooledBytes += bytes;
+                ImageLeakTracker.onClose(image);
+                return;
+            }
+        }
+        NATIVE_BYTES.addAndGet(-bytes);
+        image.close();
+    }
+
+    /**
+     * Closes every idle image.
+     */
+    public static void clear() {
+        synchronized (FREE) {
+            FREE.values().forEach(free -> free.forEach(NativeImage::close));
+            FREE.clear();
+            POOLED.clear();
+            NATIVE_BYTES.addAndGet(-pooledBytes);
+            pooledBytes = 0;
+        }
+    }
+
+    /**
+     * @return the bytes of every open image this pool allocated, idle or not.
+     */
+    public static long nativeBytes() {
+        return NATIVE_BYTES.get();
+    }
+
+    public static long pooledBytes() {
+        synchronized (FREE) {
+            return pooledBytes;
+        }
+    }
+
+    private static long sizeClass(int width, int height) {
+        return ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+
+    private static long bytes(NativeImage image) {
+        return (long) image.getWidth() * image.getHeight() * image.format().components();
+    }
+}
@@ -0,0 +1,65 @@
+package dev.corgitaco.worldviewer.client;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectArrayMap;
+import net.minecraft.client.renderer.RenderStateShard;
+import net.minecraft.client.renderer.RenderType;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+
+/**
+ * Interns the render types a factory creates per texture id and transparency. Reusing the instance lets the buffer source keep
+ * appending to the same buffer instead of starting a new one per tile, and saves creating a composite state every frame.
+ * <p>
+ * Entries live until the texture is released, whoever releases a texture id calls {@link #evict}.
+ */
+public class RenderTypeCache implements BiFunction<Integer, RenderStateShard.TransparencyStateShard, RenderType> {
+
+    private static final List<RenderTypeCache> CACHES = new CopyOnWriteArrayList<>();
+
+    private final BiFunction<Integer, RenderStateShard.TransparencyStateShard, RenderType> factory;
+    private final Int2ObjectOpenHashMap<Reference2ObjectArrayMap<RenderStateShard.TransparencyStateShard, RenderType>> renderTypes = new Int2ObjectOpenHashMap<>();
+
+    public RenderTypeCache(BiFunction<Integer, RenderStateShard.TransparencyStateShard, RenderType> factory) {
+        this.factory = factory;
+        CACHES.add(this);
+    }
+
+    public synchronized RenderType get(int id, RenderStateShard.TransparencyStateShard transparency) {
+        Reference2ObjectArrayMap<RenderStateShard.TransparencyStateShard, RenderType> byTransparency = this.renderTypes.get(id);
+        if (byTransparency == null) {
+            byTransparency = new Reference2ObjectArrayMap<>(1);
+            this.renderTypes.put(id, byTransparency);
+        }
+        RenderType renderType = byTransparency.get(transparency);
+        if (renderType == null) {
+            renderType = this.factory.apply(id, transparency);
+            byTransparency.put(transparency, renderType);
+        }
+        return renderType;
+    }
+
+    @Override
+    public RenderType apply(Integer id, RenderStateShard.TransparencyStateShard transparency) {
+        return get(id, transparency);
+    }
+
+    private synchronized void remove(int id) {
+        this.renderTypes.remove(id);
+    }
+
+    public synchronized int size() {
+        return this.renderTypes.size();
+    }
+
+    /**
+     * Drops the render types of a texture id from every cache, call it before the id is released.
+     */
+    public static void evict(int id) {
+        for (RenderTypeCache cache : CACHES) {
+            cache.remove(id);
+        }
+    }
+}
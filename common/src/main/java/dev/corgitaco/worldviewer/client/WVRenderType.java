@@ -11,7 +11,6 @@ import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.ShaderInstance;
 
 import javax.annotation.Nullable;
-import java.util.function.BiFunction;
 
 public class WVRenderType {
 
@@ -34,7 +33,7 @@ public class WVRenderType {
             }
     );
 
-    public static final BiFunction<Integer, RenderStateShard.TransparencyStateShard, RenderType> WORLD_VIEWER_GUI = (id, transparencyStateShard) -> RenderType.create("gui_texture", DefaultVertexFormat.POSITION_COLOR_TEX, VertexFormat.Mode.QUADS, 256, RenderType.CompositeState.builder().setShaderState(RenderStateShard.POSITION_COLOR_TEX_SHADER).setTextureState(new TextureIDShard(id)).setTransparencyState(transparencyStateShard).setDepthTestState(RenderStateShard.LEQUAL_DEPTH_TEST).createCompositeState(false));
+    public static final RenderTypeCache WORLD_VIEWER_GUI = new RenderTypeCache((id, transparencyStateShard) -> RenderType.create("gui_texture", DefaultVertexFormat.POSITION_COLOR_TEX, VertexFormat.Mode.QUADS, 256, RenderType.CompositeState.builder().setShaderState(RenderStateShard.POSITION_COLOR_TEX_SHADER).setTextureState(new TextureIDShard(id)).setTransparencyState(transparencyStateShard).setDepthTestState(RenderStateShard.LEQUAL_DEPTH_TEST).createCompositeState(false)));
 
 
     public static final VertexFormat POSITION_COLOR_TEX_FILTER = new VertexFormat(
@@ -46,7 +45,7 @@ public class WVRenderType {
                     .build()
     );
 
-    public static final BiFunction<Integer, RenderStateShard.TransparencyStateShard, RenderType> COLOR_FILTER_WORLD_VIEWER_GUI = (id, transparencyStateShard) -> RenderType.create("color_filter_world_viewer_gui", POSITION_COLOR_TEX_FILTER, VertexFormat.Mode.QUADS, 256, RenderType.CompositeState.builder().setShaderState(COLOR_FILTER_SHADER).setTextureState(new TextureIDShard(id)).setTransparencyState(transparencyStateShard).setDepthTestState(RenderStateShard.LEQUAL_DEPTH_TEST).createCompositeState(false));
+    public static final RenderTypeCache COLOR_FILTER_WORLD_VIEWER_GUI = new RenderTypeCache((id, transparencyStateShard) -> RenderType.create("color_filter_world_viewer_gui", POSITION_COLOR_TEX_FILTER, VertexFormat.Mode.QUADS, 256, RenderType.CompositeState.builder().setShaderState(COLOR_FILTER_SHADER).setTextureState(new TextureIDShard(id)).setTransparencyState(transparencyStateShard).setDepthTestState(RenderStateShard.LEQUAL_DEPTH_TEST).createCompositeState(false)));
 
 
 
@@ -0,0 +1,59 @@
+package dev.corgitaco.worldviewer.client;
+
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.platform.NativeImage;
+import com.mojang.blaze3d.platform.TextureUtil;
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.client.renderer.texture.AbstractTexture;
+import net.minecraft.server.packs.resources.ResourceManager;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+
+/**
+ * A texture that stays bound to one tile for all of its LODs.
+ * <p>
+ * Level {@code n} holds the tile sampled every {@code 1 << n} pixels, so a pass at that step uploads exactly its samples to that
+ * level instead of the whole image, and the texture's base level is moved down to it. Sampling is nearest without mipmapping, so
+ * only the base level is ever read and coarser levels can be left stale.
+ */
+public class WVTileTexture extends AbstractTexture {
+
+    private final int width;
+    private final int maxLevel;
+    private int uploadedLevel = -1;
+
+    public WVTileTexture(int width, int maxLevel) {
+        this.width = width;
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * Uploads {@code samples}, the tile sampled every {@code 1 << level} pixels, to that level unless the same or a finer level
+     * already was.
+     */
+    public void uploadLevel(NativeImage samples, int level) {
+        RenderSystem.assertOnRenderThreadOrInit();
+        if (level > this.maxLevel || this.uploadedLevel != -1 && level >= this.uploadedLevel) {
+            return;
+        }
+        if (this.uploadedLevel == -1) {
+            TextureUtil.prepareImage(this.getId(), this.maxLevel, this.width, this.width);
+        }
+        this.bind();
+        ClientUtil.uploadSamples(samples, level, 0, 0);
+        GlStateManager._texParameter(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_BASE_LEVEL, level);
+        this.uploadedLevel = level;
+    }
+
+    @Override
+    public void releaseId() {
+        if (this.id != -1) {
+            RenderTypeCache.evict(this.id);
+        }
+        super.releaseId();
+    }
+
+    @Override
+    public void load(ResourceManager resourceManager) {
+    }
+}
@@ -8,7 +8,9 @@ import dev.corgitaco.worldviewer.client.tile.RenderTileContext;
 import dev.corgitaco.worldviewer.client.tile.RenderTileManager;
 import dev.corgitaco.worldviewer.client.tile.SingleScreenTileLayer;
 import dev.corgitaco.worldviewer.client.tile.TileCoordinateShiftingManager;
+import dev.corgitaco.worldviewer.client.tile.metrics.TileMetrics;
 import dev.corgitaco.worldviewer.client.tile.tilelayer.TileLayer;
+import dev.corgitaco.worldviewer.platform.ModPlatform;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap;
 import net.minecraft.ChatFormatting;
@@ -43,6 +45,8 @@ import org.apache.commons.lang3.mutable.MutableInt;
 import org.jetbrains.annotations.NotNull;
 import org.lwjgl.glfw.GLFW;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.function.DoubleConsumer;
 
@@ -81,6 +85,8 @@ public class WorldScreenv2 extends Screen implements RenderTileContext {
 
     private long lastClickTime;
 
+    private boolean showMetrics;
+
 
     public WorldScreenv2(Component title) {
         super(title);
@@ -145,8 +151,14 @@ public class WorldScreenv2 extends Screen implements RenderTileContext {
         setWorldArea();
 
 
-        this.renderTileManager = new RenderTileManager(this, level, origin, shiftingManagers, this.shiftingManagerIdx);
-        this.structureIconRenderer = new StructureIconRenderer(this.level);
+        // Resizing runs init again, the tiles of the previous size are kept and culled to the new area.
+        if (this.renderTileManager == null) {
+            this.renderTileManager = new RenderTileManager(this, level, origin, shiftingManagers, this.shiftingManagerIdx);
+            this.structureIconRenderer = new StructureIconRenderer(this.level);
+        } else {
+            this.renderTileManager.cull(this);
+            this.coolDown = 0;
+        }
 
         int buttonWidth = 120;
         int buttonHeight = 20;
@@ -217,6 +229,8 @@ public class WorldScreenv2 extends Screen implements RenderTileContext {
     public void onClose() {
         this.renderTileManager.close();
         this.structureIconRenderer.close();
+        this.renderTileManager = null;
+        this.structureIconRenderer = null;
         super.onClose();
     }
 
@@ -236,6 +250,9 @@ public class WorldScreenv2 extends Screen implements RenderTileContext {
         stack.popPose();
 
         guiGraphics.drawString(Minecraft.getInstance().font, minecraft.fpsString, 0, 0, FastColor.ARGB32.color(255, 255, 255, 255));
+        if (this.showMetrics) {
+            drawMetrics(guiGraphics);
+        }
 
         if (!overWidget(mouseX, mouseY)) {
             renderToolTip(guiGraphics, mouseX, mouseY, partialTicks);
@@ -243,6 +260,14 @@ public class WorldScreenv2 extends Screen implements RenderTileContext {
         super.render(guiGraphics, mouseX, mouseY, partialTicks);
     }
 
+    private void drawMetrics(GuiGraphics guiGraphics) {
+        List<String> lines = TileMetrics.overlay(this.renderTileManager.metricsGauges());
+        int lineHeight = Minecraft.getInstance().font.lineHeight + 1;
+        for (int i = 0; i < lines.size(); i++) {
+            guiGraphics.drawString(Minecraft.getInstance().font, lines.get(i), 0, (i + 1) * lineHeight, FastColor.ARGB32.color(255, 255, 255, 255));
+        }
+    }
+
     private void renderToolTip(GuiGraphics guiGraphics, int mouseX, int mouseY, float partialTicks) {
         BlockPos mouseWorldPos = getMouseWorldPos(mouseX, mouseY);
 
@@ -422,6 +447,25 @@ public class WorldScreenv2 extends Screen implements RenderTileContext {
         return super.mouseClicked(mouseX, mouseZ, button);
     }
 
+    @Override
+    public boolean keyPressed(int keyCode, int scanCode, int modifiers) {
+        if (keyCode == GLFW.GLFW_KEY_F6) {
+            this.showMetrics = !this.showMetrics;
+            return true;
+        }
+        if (keyCode == GLFW.GLFW_KEY_F7) {
+            try {
+                Path dump = TileMetrics.dump(this.renderTileManager.metricsGauges(), ModPlatform.INSTANCE.configPath().resolve("metrics"));
+                this.minecraft.player.displayClientMessage(Component.literal("Dumped tile metrics to ").withStyle(ChatFormatting.GREEN).append(Component.literal(dump.toString()).withStyle(ChatFormatting.AQUA)), false);
+            } catch (IOException e) {
+                e.printStackTrace();
+                this.minecraft.player.displayClientMessage(Component.literal("Couldn't dump tile metrics: " + e.getMessage()).withStyle(ChatFormatting.RED), false);
+            }
+            return true;
+        }
+        return super.keyPressed(keyCode, scanCode, modifiers);
+    }
+
     private boolean overWidget(double mouseX, double mouseY) {
         boolean overWidget = false;
         for (GuiEventListener child : this.children()) {
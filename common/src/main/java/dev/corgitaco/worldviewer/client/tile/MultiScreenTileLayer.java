@@ -1,22 +1,22 @@
 package dev.corgitaco.worldviewer.client.tile;
 
 import com.mojang.blaze3d.platform.NativeImage;
-import dev.corgitaco.worldviewer.client.ClientUtil;
-import dev.corgitaco.worldviewer.client.CloseCheck;
 import dev.corgitaco.worldviewer.client.screen.WorldScreenv2;
+import dev.corgitaco.worldviewer.client.tile.atlas.TextureRegion;
+import dev.corgitaco.worldviewer.client.tile.atlas.TileAtlas;
 import dev.corgitaco.worldviewer.client.tile.tilelayer.TileLayer;
 import net.minecraft.client.gui.GuiGraphics;
-import net.minecraft.client.renderer.texture.DynamicTexture;
-import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * A 2x2 group of screen tiles merged into one. The merged pixels only exist in the layer's {@link TileAtlas}, they are copied from
+ * the delegates' slots on the GPU and the delegates are closed afterwards.
+ */
 public class MultiScreenTileLayer implements ScreenTileLayer {
 
+    private final TileAtlas atlas;
     @Nullable
-    public DynamicTexture dynamicTexture;
-
-    @NotNull
-    public final NativeImage nativeImage;
+    private TileAtlas.Allocation atlasAllocation;
 
     private boolean shouldRender = true;
 
@@ -27,9 +27,10 @@ public class MultiScreenTileLayer implements ScreenTileLayer {
     private final int maxWorldZ;
 
     private final int size;
+    private final int width;
     private final TileLayer.Renderer renderer;
 
-    public MultiScreenTileLayer(ScreenTileLayer[][] delegates) {
+    public MultiScreenTileLayer(ScreenTileLayer[][] delegates, TileAtlas atlas) {
         ScreenTileLayer firstDelegate = delegates[0][0];
         this.renderer = firstDelegate.renderer();
         this.minWorldX = firstDelegate.getMinTileWorldX();
@@ -39,11 +40,14 @@ public class MultiScreenTileLayer implements ScreenTileLayer {
 
         this.size = firstDelegate.size() * delegates[0].length;
 
-        int width = firstDelegate.image().getWidth() * delegates[0].length;
-        int height = firstDelegate.image().getHeight() * delegates[0].length;
+        int delegateWidth = firstDelegate.displayWidth();
+        this.width = delegateWidth * delegates[0].length;
 
         verifyDelegatesSimilarity(delegates, firstDelegate);
-        NativeImage newImage = ClientUtil.createImage(width, height, false);
+        TileAtlas.Allocation allocation = atlas.allocate(this.width);
+        if (allocation == null) {
+            throw new IllegalArgumentException("Merged tile of %s pixels does not fit an atlas page.".formatted(this.width));
+        }
 
         for (int x = 0; x < delegates.length; x++) {
             for (int z = 0; z < delegates[x].length; z++) {
@@ -51,28 +55,18 @@ public class MultiScreenTileLayer implements ScreenTileLayer {
 
                 delegate.setShouldRender(false);
 
-                NativeImage nativeImage = delegate.image();
-
-                int offsetX = nativeImage.getWidth() * x;
-                int offsetZ = nativeImage.getHeight() * z;
-
-                for (int pixelX = 0; pixelX < nativeImage.getWidth(); pixelX++) {
-                    for (int pixelZ = 0; pixelZ < nativeImage.getWidth(); pixelZ++) {
-                        int pixelRGBA = nativeImage.getPixelRGBA(pixelX, pixelZ);
-                        newImage.setPixelRGBA(pixelX + offsetX, pixelZ + offsetZ, pixelRGBA);
-                    }
+                delegate.texture(atlas);
+                TileAtlas.Allocation delegateAllocation = delegate.atlasAllocation();
+                if (delegateAllocation == null) {
+                    throw new IllegalStateException("Delegate [%s, %s] is not in the atlas.".formatted(x, z));
                 }
+                atlas.copy(delegateAllocation, delegateWidth, allocation, delegateWidth * x, delegateWidth * z);
 
-                CloseCheck closeCheck = (CloseCheck) (Object) delegate.image();
-                if (closeCheck.canClose()) {
-                    delegate.closeAll();
-                } else {
-                    delegate.releaseDynamicTextureID();
-                    closeCheck.setShouldClose(true);
-                }
+                delegate.release();
             }
         }
-        this.nativeImage = newImage;
+        this.atlas = atlas;
+        this.atlasAllocation = allocation;
     }
 
     private static void verifyDelegatesSimilarity(ScreenTileLayer[][] delegates, ScreenTileLayer firstDelegate) {
@@ -80,18 +74,12 @@ public class MultiScreenTileLayer implements ScreenTileLayer {
             for (int z = 0; z < delegates[x].length; z++) {
                 ScreenTileLayer delegate = delegates[x][z];
 
-                int currentDelegateWidth = delegate.image().getWidth();
-                int firstDelegateWidth = firstDelegate.image().getWidth();
+                int currentDelegateWidth = delegate.displayWidth();
+                int firstDelegateWidth = firstDelegate.displayWidth();
                 if (currentDelegateWidth != firstDelegateWidth) {
                     throw new IllegalArgumentException("Delegate widths do not match! Should be %s but found %s at delegate [%s, %s]".formatted(firstDelegateWidth, currentDelegateWidth, x, z));
                 }
 
-                int currentDelegateHeight = delegate.image().getHeight();
-                int firstDelegateHeight = firstDelegate.image().getHeight();
-                if (currentDelegateHeight != firstDelegateHeight) {
-                    throw new IllegalArgumentException("Delegate heights do not match! Should be %s but found %s at delegate [%s, %s]".formatted(firstDelegateHeight, currentDelegateHeight, x, z));
-                }
-
                 Class<? extends ScreenTileLayer> firstDelegateClass = firstDelegate.getClass();
                 Class<? extends ScreenTileLayer> currentDelegateClass = delegate.getClass();
                 if (firstDelegateClass != currentDelegateClass) {
@@ -136,12 +124,26 @@ public class MultiScreenTileLayer implements ScreenTileLayer {
     }
 
     @Override
-    public void renderTile(GuiGraphics guiGraphics, float scale, float opacity, RenderTileContext renderTileContext) {
-        if (shouldRender && this.nativeImage != null) {
-            if (this.dynamicTexture == null) {
-                this.dynamicTexture = new DynamicTexture(this.nativeImage);
-            }
-            renderer.render(guiGraphics, this.size, this.dynamicTexture.getId(), opacity, renderTileContext);
+    @Nullable
+    public TextureRegion texture(TileAtlas atlas) {
+        return this.atlasAllocation != null ? this.atlasAllocation.region() : null;
+    }
+
+    @Override
+    @Nullable
+    public TileAtlas.Allocation atlasAllocation() {
+        return this.atlasAllocation;
+    }
+
+    @Override
+    public int displayWidth() {
+        return this.width;
+    }
+
+    @Override
+    public void renderTile(GuiGraphics guiGraphics, TextureRegion texture, float scale, float opacity, RenderTileContext renderTileContext) {
+        if (shouldRender) {
+            renderer.render(guiGraphics, this.size, texture, opacity, renderTileContext);
         }
     }
 
@@ -151,8 +153,9 @@ public class MultiScreenTileLayer implements ScreenTileLayer {
     }
 
     @Override
+    @Nullable
     public NativeImage image() {
-        return this.nativeImage;
+        return null;
     }
 
     @Override
@@ -176,41 +179,10 @@ public class MultiScreenTileLayer implements ScreenTileLayer {
     }
 
     @Override
-    public void releaseDynamicTextureID() {
-        if (this.dynamicTexture != null) {
-            this.dynamicTexture.releaseId();
-        }
-    }
-
-    @Override
-    public void closeDynamicTexture() {
-        if (this.dynamicTexture != null) {
-            this.dynamicTexture.close();
+    public void release() {
+        if (this.atlasAllocation != null) {
+            this.atlas.free(this.atlasAllocation);
+            this.atlasAllocation = null;
         }
     }
-
-    @Override
-    public void closeNativeImage() {
-        this.nativeImage.close();
-    }
-
-    @Override
-    public boolean canClose() {
-        return ((CloseCheck) (Object) this.nativeImage).canClose();
-    }
-
-    @Override
-    public void setCanClose(boolean canClose) {
-        ((CloseCheck) (Object) this.nativeImage).setCanClose(canClose);
-    }
-
-    @Override
-    public boolean shouldClose() {
-        return ((CloseCheck) (Object) this.nativeImage).shouldClose();
-    }
-
-    @Override
-    public void setShouldClose(boolean shouldClose) {
-        ((CloseCheck) (Object) this.nativeImage).setShouldClose(shouldClose);
-    }
 }
@@ -1,15 +1,18 @@
 package dev.corgitaco.worldviewer.client.tile;
 
-import com.google.common.io.ByteArrayDataOutput;
-import com.google.common.io.ByteStreams;
-import com.mojang.blaze3d.platform.NativeImage;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.math.Axis;
-import dev.corgitaco.worldviewer.client.CloseCheck;
+import dev.corgitaco.worldviewer.client.ImageLeakTracker;
+import dev.corgitaco.worldviewer.client.NativeImagePool;
 import dev.corgitaco.worldviewer.client.screen.WorldScreenv2;
+import dev.corgitaco.worldviewer.client.tile.atlas.TextureRegion;
+import dev.corgitaco.worldviewer.client.tile.atlas.TileAtlas;
+import dev.corgitaco.worldviewer.client.tile.metrics.TileMetrics;
+import dev.corgitaco.worldviewer.client.tile.storage.TilePayload;
+import dev.corgitaco.worldviewer.client.tile.storage.TileRegionStorage;
+import dev.corgitaco.worldviewer.client.tile.storage.TileWriteQueue;
 import dev.corgitaco.worldviewer.client.tile.tilelayer.TileLayer;
 import dev.corgitaco.worldviewer.common.storage.DataTileManager;
-import dev.corgitaco.worldviewer.mixin.NativeImageAccessor;
 import dev.corgitaco.worldviewer.platform.ModPlatform;
 import dev.corgitaco.worldviewer.util.LongPackingUtil;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
@@ -19,36 +22,44 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiGraphics;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.NbtIo;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.Mth;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 public class RenderTileManager implements AutoCloseable {
-    private ExecutorService executorService = createExecutor("Screen-Tile-Generator");
-    private static final ExecutorService FILE_SAVING_EXECUTOR_SERVICE = RenderTileManager.createExecutor(2, "Worker-TileSaver-IO");
+    private static final int GENERATOR_THREADS = Mth.clamp((Runtime.getRuntime().availableProcessors() - 1) / 2, 1, 25);
+    private static final int MAX_PENDING_JOBS = GENERATOR_THREADS * 8;
+
+    private static final TileWriteQueue TILE_WRITE_QUEUE = new TileWriteQueue(256, "Worker-TileSaver-IO");
 
     private final Long2ObjectLinkedOpenHashMap<CompletableFuture<SingleScreenTileLayer>>[] trackedTileLayerFutures = Util.make(new Long2ObjectLinkedOpenHashMap[TileLayer.FACTORY_REGISTRY.size()], maps -> {
         for (int i = 0; i < maps.length; i++) {
             maps[i] = new Long2ObjectLinkedOpenHashMap();
         }
     });
+    // Unfinished futures per layer, counted on submit and on completion so the render thread never scans the futures for them.
+    private final AtomicInteger[] pendingJobs = Util.make(new AtomicInteger[TileLayer.FACTORY_REGISTRY.size()], counters -> {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new AtomicInteger();
+        }
+    });
     private RenderTileContext renderTileContext;
     private final BlockPos origin;
 
@@ -69,8 +80,19 @@ public class RenderTileManager implements AutoCloseable {
         }
     });
 
+    private final TileAtlas[] atlases = Util.make(new TileAtlas[TileLayer.FACTORY_REGISTRY.size()], atlases -> {
+        for (int i = 0; i < atlases.length; i++) {
+            atlases[i] = new TileAtlas();
+        }
+    });
+
     private final DataTileManager dataTileManager;
+    private final TileRegionStorage[] tileStorages;
+    private final TileLoadQueue tileLoadQueue;
+    private final TileGenerationExecutor tileGenerationExecutor;
     private MutableInt shiftingManagerIdx;
+    @Nullable
+    private TileArea culledArea;
 
 
     public boolean blockGeneration = true;
@@ -80,39 +102,61 @@ public class RenderTileManager implements AutoCloseable {
         this.origin = origin;
         dataTileManager = new DataTileManager(ModPlatform.INSTANCE.configPath().resolve(String.valueOf(level.getSeed())), level.getChunkSource().getGenerator(), level.getChunkSource().getGenerator().getBiomeSource(), level, level.getSeed());
         this.shiftingManagerIdx = shiftingManagerIdx;
+        Path mapDirectory = ModPlatform.INSTANCE.configPath().resolve("client").resolve("map").resolve(level.getServer().getWorldData().getLevelName());
+        this.tileStorages = new TileRegionStorage[TileLayer.FACTORY_REGISTRY.size()];
+        for (int i = 0; i < this.tileStorages.length; i++) {
+            this.tileStorages[i] = TileRegionStorage.of(mapDirectory.resolve(TileLayer.FACTORY_REGISTRY.get(i).name()));
+        }
         long originTile = renderTileContext.currentShiftingManager().tileKey(origin);
+        this.tileLoadQueue = new TileLoadQueue(originTile);
+        this.tileGenerationExecutor = new TileGenerationExecutor(GENERATOR_THREADS, "Screen-Tile-Generator", originTile, renderTileContext.currentShiftingManager().getShift());
+        TileMetrics.reset();
         loadTiles(renderTileContext, originTile);
     }
 
     public void render(GuiGraphics guiGraphics, int mouseX, int mouseY, float partialTicks) {
         for (int toRenderIDX = 0; toRenderIDX < this.toRender.length; toRenderIDX++) {
             String name = TileLayer.FACTORY_REGISTRY.get(toRenderIDX).name();
-            this.toRender[toRenderIDX].forEach((scale, tiles) -> renderTiles(guiGraphics, this.renderTileContext.opacities().getOrDefault(name, 1F), this.renderTileContext, tiles.values()));
+            List<ScreenTileLayer> tiles = new ArrayList<>();
+            this.toRender[toRenderIDX].values().forEach(scaledTiles -> tiles.addAll(scaledTiles.values()));
+            renderTiles(guiGraphics, this.renderTileContext.opacities().getOrDefault(name, 1F), this.renderTileContext, this.atlases[toRenderIDX], tiles);
         }
 
         for (int toRenderIDX = 0; toRenderIDX < this.loaded.length; toRenderIDX++) {
             String name = TileLayer.FACTORY_REGISTRY.get(toRenderIDX).name();
             renderTilesAfter(guiGraphics, this.renderTileContext.opacities().getOrDefault(name, 1F), this.renderTileContext, this.loaded[toRenderIDX].values());
         }
+        TileMetrics.endFrame();
     }
 
-    private static void renderTiles(GuiGraphics graphics, float opacity, RenderTileContext renderTileContext, Collection<? extends ScreenTileLayer> renderTiles) {
-        PoseStack poseStack = graphics.pose();
-        renderTiles.forEach(tileToRender -> {
-            if (tileToRender != null) {
-                int localX = (int) renderTileContext.localXFromWorldX(tileToRender.getMinTileWorldX());
-                int localZ = (int) renderTileContext.localZFromWorldZ(tileToRender.getMinTileWorldZ());
-
-                int screenTileMinX = (renderTileContext.getScreenCenterX() + localX);
-                int screenTileMinZ = (renderTileContext.getScreenCenterZ() + localZ);
-
-                poseStack.pushPose();
-                poseStack.translate(screenTileMinX, screenTileMinZ, 0);
-                poseStack.mulPose(Axis.ZN.rotationDegrees(180));
-                tileToRender.renderTile(graphics, renderTileContext.scale(), opacity, renderTileContext);
-                poseStack.popPose();
+    private static void renderTiles(GuiGraphics graphics, float opacity, RenderTileContext renderTileContext, TileAtlas atlas, Collection<? extends ScreenTileLayer> renderTiles) {
+        List<TexturedTile> texturedTiles = new ArrayList<>(renderTiles.size());
+        for (ScreenTileLayer tile : renderTiles) {
+            if (tile != null && tile.shouldRender()) {
+                TextureRegion texture = tile.texture(atlas);
+                if (texture != null) {
+                    texturedTiles.add(new TexturedTile(tile, texture));
+                }
             }
-        });
+        }
+        // Tiles of the same atlas page share a render type, drawing them back to back batches them into a single draw call.
+        texturedTiles.sort(Comparator.comparingInt(texturedTile -> texturedTile.texture().id()));
+
+        PoseStack poseStack = graphics.pose();
+        for (TexturedTile texturedTile : texturedTiles) {
+            ScreenTileLayer tileToRender = texturedTile.tile();
+            int localX = (int) renderTileContext.localXFromWorldX(tileToRender.getMinTileWorldX());
+            int localZ = (int) renderTileContext.localZFromWorldZ(tileToRender.getMinTileWorldZ());
+
+            int screenTileMinX = (renderTileContext.getScreenCenterX() + localX);
+            int screenTileMinZ = (renderTileContext.getScreenCenterZ() + localZ);
+
+            poseStack.pushPose();
+            poseStack.translate(screenTileMinX, screenTileMinZ, 0);
+            poseStack.mulPose(Axis.ZN.rotationDegrees(180));
+            tileToRender.renderTile(graphics, texturedTile.texture(), renderTileContext.scale(), opacity, renderTileContext);
+            poseStack.popPose();
+        }
     }
 
     private static void renderTilesAfter(GuiGraphics graphics, float opacity, RenderTileContext renderTileContext, Collection<? extends SingleScreenTileLayer> renderTiles) {
@@ -139,7 +183,10 @@ public class RenderTileManager implements AutoCloseable {
         if (!blockGeneration) {
             loadTiles(renderTileContext, originTile);
             blockGeneration = true;
+        } else {
+            submitQueuedTiles(renderTileContext.currentShiftingManager());
         }
+        this.tileGenerationExecutor.reprioritize(originTile, renderTileContext.currentShiftingManager().getShift());
 
         List<Runnable> toRun = new ArrayList<>();
 
@@ -157,25 +204,14 @@ public class RenderTileManager implements AutoCloseable {
                 continue;
             }
             changesDetected[trackedTileLayerFutureIdx].set(false);
-            {
-                long startMs = System.currentTimeMillis();
-                processFutures(trackedTileLayerFutureIdx, tileCoordinateShiftingManager, toRun);
-                long endTime = System.currentTimeMillis();
-                long timeTaken = endTime - startMs;
-                if (timeTaken > 5) {
-                    System.out.println("Processing futures took over 5ms, took: %s".formatted(timeTaken));
-                }
-            }
 
-            {
-                long startMs = System.currentTimeMillis();
-                scaleUpTiles(trackedTileLayerFutureIdx, toRun);
-                long endTime = System.currentTimeMillis();
-                long timeTaken = endTime - startMs;
-                if (timeTaken > 5) {
-                    System.out.println("Scaling tiles took over 5ms, took: %s".formatted(timeTaken));
-                }
-            }
+            long start = System.nanoTime();
+            processFutures(trackedTileLayerFutureIdx, tileCoordinateShiftingManager, toRun);
+            long processed = System.nanoTime();
+            TileMetrics.recordStage(TileMetrics.Stage.PROCESS_FUTURES, trackedTileLayerFutureIdx, processed - start);
+
+            scaleUpTiles(trackedTileLayerFutureIdx, toRun);
+            TileMetrics.recordStage(TileMetrics.Stage.SCALE_UP, trackedTileLayerFutureIdx, System.nanoTime() - processed);
         }
     }
 
@@ -187,53 +223,50 @@ public class RenderTileManager implements AutoCloseable {
             long tilePos = entry.getLongKey();
             CompletableFuture<SingleScreenTileLayer> future = entry.getValue();
             if (future.isCompletedExceptionally()) {
-                try {
-                    SingleScreenTileLayer now = future.getNow(null);
-                    if (now != null) {
-                        if (now.canClose()) {
-                            now.closeAll();
-                        } else {
-                            now.releaseDynamicTextureID();
-                            now.setShouldClose(true);
-                        }
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    throw new RuntimeException(e);
+                // A failed job never produced a tile, so there is nothing to release. Log it and drop the future.
+                if (!future.isCancelled()) {
+                    future.exceptionally(throwable -> {
+                        throwable.printStackTrace();
+                        return null;
+                    });
                 }
+                toRemove.add(tilePos);
+                return;
             }
 
             if (future.isDone()) {
                 toRemove.add(tilePos);
             }
 
-            int worldX = shiftingManager.getWorldXFromTileKey(tilePos);
-            int worldZ = shiftingManager.getWorldZFromTileKey(tilePos);
-            if (!renderTileContext.worldViewArea().intersects(worldX, worldZ, worldX, worldZ) && !future.isCancelled()) {
+            if (!tileInView(shiftingManager, renderTileContext.worldViewArea(), tilePos) && !future.isCancelled()) {
                 future.cancel(true);
                 toRemove.add(tilePos);
             } else {
                 toRun.add(() -> {
                     SingleScreenTileLayer lastResolution = future.getNow(null);
                     if (lastResolution != null) {
+                        // Before the next LOD is submitted, it refines the image this layer only borrowed so far.
+                        lastResolution.tileLayer().claim();
                         int newSampleRes = lastResolution.getSampleRes() >> 1;
                         if (newSampleRes >= shiftingManager.sampleResolution()) {
                             AtomicBoolean changesDetected = this.changesDetected[finalidx];
-                            String name = TileLayer.FACTORY_REGISTRY.get(finalidx).name();
+                            TileRegionStorage tileStorage = this.tileStorages[finalidx];
                             TileLayer.GenerationFactory<?> generationFactory = TileLayer.FACTORY_REGISTRY.get(finalidx).generationFactory();
                             TileLayer.DiskFactory diskFactory = TileLayer.FACTORY_REGISTRY.get(finalidx).diskFactory();
-                            trackedTileLayerFutures[finalidx].computeIfAbsent(tilePos, key -> CompletableFuture.supplyAsync(submitTileFuture(shiftingManager, this.dataTileManager, generationFactory, diskFactory, name, changesDetected, lastResolution.getSize(), tilePos, newSampleRes, lastResolution), executorService));
+                            trackedTileLayerFutures[finalidx].computeIfAbsent(tilePos, key -> {
+                                // The job refines this layer after it may have been released here, so it holds a reference of its
+                                // own. It is taken on this thread while the layer is known to be alive and dropped if the job never runs.
+                                TileLayer lastResTileLayer = lastResolution.tileLayer();
+                                lastResTileLayer.retain();
+                                return trackPending(finalidx, this.tileGenerationExecutor.submit(tilePos, shiftingManager.getShift(), submitTileFuture(finalidx, shiftingManager, this.dataTileManager, generationFactory, diskFactory, tileStorage, changesDetected, lastResolution.getSize(), tilePos, newSampleRes, lastResolution), SingleScreenTileLayer::release, lastResTileLayer::release));
+                            });
                         }
 
                         SingleScreenTileLayer previous = loaded[finalidx].put(tilePos, lastResolution);
                         this.toRender[finalidx].computeIfAbsent(1, key1 -> new Long2ObjectOpenHashMap<>()).put(tilePos, lastResolution);
-                        if (previous != null && previous != lastResolution && previous.tileLayer().usesLod()) {
-                            if (previous.canClose()) {
-                                previous.closeAll();
-                            } else {
-                                previous.releaseDynamicTextureID();
-                                previous.setShouldClose(true);
-                            }
+                        // A layer without LODs is shared with the previous tile, which then only drops its reference.
+                        if (previous != null && previous != lastResolution) {
+                            previous.release();
                         }
                     }
                 });
@@ -243,152 +276,162 @@ public class RenderTileManager implements AutoCloseable {
     }
 
     private void scaleUpTiles(final int trackedTileLayerFutureIdx, List<Runnable> toRun) {
-        Int2ObjectOpenHashMap<LongSet> uploaded = new Int2ObjectOpenHashMap<>();
-        this.toRender[trackedTileLayerFutureIdx].int2ObjectEntrySet().fastForEach((entry) -> {
-            int currentScale = entry.getIntKey();
-            Long2ObjectOpenHashMap<ScreenTileLayer> tiles = entry.getValue();
-
-            int newScale = currentScale << 1;
-
-            tiles.long2ObjectEntrySet().fastForEach(screenTileEntry -> {
-                long tilePos = screenTileEntry.getLongKey();
-                if (uploaded.computeIfAbsent(currentScale, key -> new LongOpenHashSet()).contains(tilePos)) {
-                    return;
+        Int2ObjectOpenHashMap<Long2ObjectOpenHashMap<ScreenTileLayer>> byScale = this.toRender[trackedTileLayerFutureIdx];
+        int sampleResolution = renderTileContext.currentShiftingManager().sampleResolution();
+        TileAtlas atlas = this.atlases[trackedTileLayerFutureIdx];
+
+        for (int currentScale : byScale.keySet().toIntArray()) {
+            Long2ObjectOpenHashMap<ScreenTileLayer> tiles = byScale.get(currentScale);
+            Long2ObjectOpenHashMap<ScreenTileLayer> parents = byScale.get(currentScale << 1);
+
+            List<TileMergePlanner.Merge> merges = TileMergePlanner.plan(currentScale, tiles.keySet(), tilePos -> {
+                ScreenTileLayer tile = tiles.get(tilePos);
+                if (tile == null || !tile.sampleResCheck(sampleResolution)) {
+                    return false;
                 }
-
-                ScreenTileLayer screenTileLayer = screenTileEntry.getValue();
-
-                if (screenTileLayer.image() == null) {
-                    return;
+                int displayWidth = tile.displayWidth();
+                return displayWidth > 0 && displayWidth * 2 <= TileAtlas.PAGE_SIZE;
+            }, parentKey -> parents != null && parents.containsKey(parentKey));
+
+            for (TileMergePlanner.Merge merge : merges) {
+                ScreenTileLayer[][] delegates = new ScreenTileLayer[2][2];
+                long[] children = merge.children();
+                for (int i = 0; i < children.length; i++) {
+                    delegates[i / 2][i % 2] = tiles.get(children[i]);
                 }
 
-                int tileX = renderTileContext.currentShiftingManager().getTileX(tilePos);
-                int tileZ = renderTileContext.currentShiftingManager().getTileZ(tilePos);
+                toRun.add(() -> {
+                    Long2ObjectOpenHashMap<ScreenTileLayer> current = byScale.get(merge.scale());
+                    for (int i = 0; i < children.length; i++) {
+                        // A child replaced by a newer LOD since planning is merged on a later tick instead.
+                        if (current == null || current.get(children[i]) != delegates[i / 2][i % 2]) {
+                            return;
+                        }
+                    }
+                    byScale.computeIfAbsent(merge.newScale(), key -> new Long2ObjectOpenHashMap<>()).put(merge.parentKey(), new MultiScreenTileLayer(delegates, atlas));
+                    for (long child : children) {
+                        current.remove(child);
+                    }
+                });
+            }
+        }
+    }
 
-                int getNextScaleMinTileX = (tileX / newScale) * newScale;
-                int getNextScaleMaxTileX = (getNextScaleMinTileX + newScale);
+    private void loadTiles(RenderTileContext renderTileContext, long originTile) {
+        TileCoordinateShiftingManager shiftingManager = renderTileContext.currentShiftingManager();
+        BoundingBox worldViewArea = renderTileContext.worldViewArea();
 
-                int getNextScaleMinTileZ = (tileZ / newScale) * newScale;
-                int getNextScaleMaxTileZ = (getNextScaleMinTileZ + newScale);
+        this.tileLoadQueue.setOrigin(originTile);
+        this.tileLoadQueue.removeIf(tilePos -> !tileInView(shiftingManager, worldViewArea, tilePos));
 
-                long minTileKey = LongPackingUtil.tileKey(getNextScaleMinTileX, getNextScaleMinTileZ);
+        int minTileX = shiftingManager.blockToTile(worldViewArea.minX());
+        int maxTileX = shiftingManager.blockToTile(worldViewArea.maxX());
+        int minTileZ = shiftingManager.blockToTile(worldViewArea.minZ());
+        int maxTileZ = shiftingManager.blockToTile(worldViewArea.maxZ());
 
-                if (tilePos != minTileKey) {
-                    return;
+        for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+            for (int tileZ = minTileZ; tileZ <= maxTileZ; tileZ++) {
+                long tilePos = LongPackingUtil.tileKey(tileX, tileZ);
+                if (needsLoading(tilePos)) {
+                    this.tileLoadQueue.enqueue(tilePos);
                 }
+            }
+        }
 
-                if (!toRender[trackedTileLayerFutureIdx].computeIfAbsent(newScale, key1 -> new Long2ObjectOpenHashMap<>()).containsKey(minTileKey)) {
-                    int xRange = Math.abs(getNextScaleMaxTileX - getNextScaleMinTileX);
-                    int zRange = Math.abs(getNextScaleMaxTileZ - getNextScaleMinTileZ);
-
-                    int xTileIncrement = xRange / 2;
-                    int zTileIncrement = zRange / 2;
-
-                    ScreenTileLayer[][] tilesToRender = new ScreenTileLayer[2][2];
-
-                    long[] positions = new long[2 * 2];
-                    for (int tileOffsetX = 0; tileOffsetX < 2; tileOffsetX++) {
-                        for (int tileOffsetZ = 0; tileOffsetZ < 2; tileOffsetZ++) {
-                            int tileX1 = getNextScaleMinTileX + (tileOffsetX * xTileIncrement);
-                            int tileZ1 = getNextScaleMinTileZ + (tileOffsetZ * zTileIncrement);
-                            long tileKey = LongPackingUtil.tileKey(tileX1, tileZ1);
-                            positions[tileOffsetX * 2 + tileOffsetZ] = tileKey;
-
-                            ScreenTileLayer offset = this.toRender[trackedTileLayerFutureIdx].get(currentScale).get(tileKey);
+        submitQueuedTiles(shiftingManager);
+    }
 
-                            if (offset != null && offset.sampleResCheck(renderTileContext.currentShiftingManager().sampleResolution())) {
-                                tilesToRender[tileOffsetX][tileOffsetZ] = offset;
-                            } else {
-                                return;
-                            }
-                        }
-                    }
+    private void submitQueuedTiles(TileCoordinateShiftingManager shiftingManager) {
+        int budget = MAX_PENDING_JOBS - pendingJobs();
+        while (budget > 0 && !this.tileLoadQueue.isEmpty()) {
+            long tilePos = this.tileLoadQueue.dequeue();
+            budget -= submitTile(shiftingManager, tilePos);
+        }
+    }
 
-                    for (long position : positions) {
-                        uploaded.computeIfAbsent(currentScale, key -> new LongOpenHashSet()).add(position);
-                    }
-                    uploaded.computeIfAbsent(newScale, key -> new LongOpenHashSet()).add(minTileKey);
+    private int submitTile(TileCoordinateShiftingManager shiftingManager, long tilePos) {
+        int submitted = 0;
+        int tileSize = shiftingManager.tileSize();
+        for (int layerIdx = 0; layerIdx < this.trackedTileLayerFutures.length; layerIdx++) {
+            if (loaded[layerIdx].containsKey(tilePos) || trackedTileLayerFutures[layerIdx].containsKey(tilePos)) {
+                continue;
+            }
+            AtomicBoolean changesDetected = this.changesDetected[layerIdx];
+            TileRegionStorage tileStorage = this.tileStorages[layerIdx];
+            TileLayer.GenerationFactory<?> generationFactory = TileLayer.FACTORY_REGISTRY.get(layerIdx).generationFactory();
+            TileLayer.DiskFactory diskFactory = TileLayer.FACTORY_REGISTRY.get(layerIdx).diskFactory();
 
-                    toRun.add(() -> {
-                        toRender[trackedTileLayerFutureIdx].computeIfAbsent(newScale, key1 -> new Long2ObjectOpenHashMap<>()).put(minTileKey, new MultiScreenTileLayer(tilesToRender));
-                        for (long pos : positions) {
-                            toRender[trackedTileLayerFutureIdx].get(currentScale).remove(pos);
-                        }
-                    });
-                }
-            });
-        });
+            trackedTileLayerFutures[layerIdx].put(tilePos, trackPending(layerIdx, this.tileGenerationExecutor.submit(tilePos, shiftingManager.getShift(), submitTileFuture(layerIdx, shiftingManager, this.dataTileManager, generationFactory, diskFactory, tileStorage, changesDetected, tileSize, tilePos, shiftingManager.sampleResolution() << 3, null), SingleScreenTileLayer::release)));
+            submitted++;
+        }
+        return submitted;
     }
 
-    private void loadTiles(RenderTileContext renderTileContext, long originTile) {
-        int xTileRange = renderTileContext.xTileRange();
-        int zTileRange = renderTileContext.zTileRange();
-
-        int slices = 360;
-        double sliceSize = Mth.TWO_PI / slices;
+    private boolean needsLoading(long tilePos) {
+        for (int layerIdx = 0; layerIdx < this.trackedTileLayerFutures.length; layerIdx++) {
+            if (!loaded[layerIdx].containsKey(tilePos) && !trackedTileLayerFutures[layerIdx].containsKey(tilePos)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        int tileRange = Math.max(xTileRange, zTileRange) + 2;
+    /**
+     * Called on the render thread.
+     */
+    public TileMetrics.Gauges metricsGauges() {
+        int[] pendingJobs = new int[this.pendingJobs.length];
+        for (int layerIdx = 0; layerIdx < pendingJobs.length; layerIdx++) {
+            pendingJobs[layerIdx] = this.pendingJobs[layerIdx].get();
+        }
+        return new TileMetrics.Gauges(pendingJobs, this.tileLoadQueue.size(), this.dataTileManager.cacheHits(), this.dataTileManager.cacheMisses());
+    }
 
+    private int pendingJobs() {
+        int pending = 0;
+        for (AtomicInteger counter : this.pendingJobs) {
+            pending += counter.get();
+        }
+        return pending;
+    }
 
-        TileCoordinateShiftingManager shiftingManager = renderTileContext.currentShiftingManager();
+    /**
+     * Counts {@code future} as pending until it completes, however it completes, cancellation included.
+     */
+    private CompletableFuture<SingleScreenTileLayer> trackPending(int layerIdx, CompletableFuture<SingleScreenTileLayer> future) {
+        AtomicInteger counter = this.pendingJobs[layerIdx];
+        counter.incrementAndGet();
+        future.whenComplete((tile, throwable) -> counter.decrementAndGet());
+        return future;
+    }
 
-        for (int tileDistanceFromOrigin = 0; tileDistanceFromOrigin <= tileRange; tileDistanceFromOrigin++) {
-
-            int tileSize = shiftingManager.tileSize();
-            int originWorldX = shiftingManager.getWorldXFromTileKey(originTile) + (tileSize / 2);
-            int originWorldZ = shiftingManager.getWorldZFromTileKey(originTile) + (tileSize / 2);
-            double distance = tileSize * tileDistanceFromOrigin;
-
-            for (int i = 0; i < slices; i++) {
-                double angle = i * sliceSize;
-                int worldTileX = (int) Math.round(originWorldX + (Math.sin(angle) * distance));
-                int worldTileZ = (int) Math.round(originWorldZ + (Math.cos(angle) * distance));
-                if (renderTileContext.worldViewArea().intersects(worldTileX, worldTileZ, worldTileX, worldTileZ)) {
-                    long tilePos = LongPackingUtil.tileKey(shiftingManager.blockToTile(worldTileX), shiftingManager.blockToTile(worldTileZ));
-
-                    for (int layerIdx = 0; layerIdx < this.trackedTileLayerFutures.length; layerIdx++) {
-                        SingleScreenTileLayer tile = loaded[layerIdx].get(tilePos);
-                        if (tile == null) {
-                            AtomicBoolean changesDetected = this.changesDetected[layerIdx];
-                            String name = TileLayer.FACTORY_REGISTRY.get(layerIdx).name();
-                            TileLayer.GenerationFactory<?> generationFactory = TileLayer.FACTORY_REGISTRY.get(layerIdx).generationFactory();
-                            TileLayer.DiskFactory diskFactory = TileLayer.FACTORY_REGISTRY.get(layerIdx).diskFactory();
-
-                            trackedTileLayerFutures[layerIdx].computeIfAbsent(tilePos, key ->
-                                    CompletableFuture.supplyAsync(submitTileFuture(shiftingManager, this.dataTileManager, generationFactory, diskFactory, name, changesDetected, tileSize, tilePos, shiftingManager.sampleResolution() << 3, null), executorService)
-                            );
-                        }
-                    }
-                }
-            }
-        }
+    private static boolean tileInView(TileCoordinateShiftingManager shiftingManager, BoundingBox worldViewArea, long tilePos) {
+        int minTileWorldX = shiftingManager.getWorldXFromTileKey(tilePos);
+        int minTileWorldZ = shiftingManager.getWorldZFromTileKey(tilePos);
+        int tileSize = shiftingManager.tileSize();
+        return worldViewArea.intersects(minTileWorldX, minTileWorldZ, minTileWorldX + tileSize - 1, minTileWorldZ + tileSize - 1);
     }
 
-    private static Supplier<SingleScreenTileLayer> submitTileFuture(TileCoordinateShiftingManager shiftingManager, DataTileManager dataTileManager, TileLayer.GenerationFactory<?> generationFactory, TileLayer.DiskFactory diskFactory, String name, AtomicBoolean changesDetected, int tileSize, long tilePos, int sampleResolution, @Nullable SingleScreenTileLayer lastResolution) {
+    private static Supplier<SingleScreenTileLayer> submitTileFuture(int layerIdx, TileCoordinateShiftingManager shiftingManager, DataTileManager dataTileManager, TileLayer.GenerationFactory<?> generationFactory, TileLayer.DiskFactory diskFactory, TileRegionStorage tileStorage, AtomicBoolean changesDetected, int tileSize, long tilePos, int sampleResolution, @Nullable SingleScreenTileLayer lastResolution) {
         return () -> {
             var worldMinTileX = shiftingManager.getWorldXFromTileKey(tilePos);
             var worldMinTileZ = shiftingManager.getWorldZFromTileKey(tilePos);
-
-            String levelName = dataTileManager.serverLevel().getServer().getWorldData().getLevelName();
-
-            Path imagePath = ModPlatform.INSTANCE.configPath().resolve("client").resolve("map").resolve(levelName).resolve(name).resolve("image").resolve("p." + shiftingManager.blockToTile(worldMinTileX) + "-" + shiftingManager.blockToTile(worldMinTileZ) + "_s." + tileSize + ".png");
-            Path dataPath = ModPlatform.INSTANCE.configPath().resolve("client").resolve("map").resolve(levelName).resolve(name).resolve("data").resolve("p." + shiftingManager.blockToTile(worldMinTileX) + "-" + shiftingManager.blockToTile(worldMinTileZ) + "_s." + tileSize + ".dat");
             LongSet sampledChunks = new LongOpenHashSet();
 
-            TileLayer tileLayer = getTileLayer(shiftingManager, dataTileManager, tileSize, sampleResolution, lastResolution, diskFactory, imagePath, dataPath, generationFactory, worldMinTileX, worldMinTileZ, sampledChunks);
+            TileLayer tileLayer = dataTileManager.sample(() -> getTileLayer(layerIdx, shiftingManager, dataTileManager, tileSize, sampleResolution, lastResolution, diskFactory, tileStorage, generationFactory, worldMinTileX, worldMinTileZ, sampledChunks));
 
             SingleScreenTileLayer tile = new SingleScreenTileLayer(tileLayer, worldMinTileX, worldMinTileZ, tileSize);
             changesDetected.set(true);
-
-            sampledChunks.forEach(dataTileManager::unloadTile);
             return tile;
         };
     }
 
-    private static TileLayer getTileLayer(TileCoordinateShiftingManager shiftingManager, DataTileManager dataTileManager, int tileSize, int sampleResolution, @Nullable SingleScreenTileLayer lastResolution, TileLayer.DiskFactory diskFactory, Path imagePath, Path dataPath, TileLayer.GenerationFactory generationFactory, int x, int z, LongSet sampledChunks) {
+    private static TileLayer getTileLayer(int layerIdx, TileCoordinateShiftingManager shiftingManager, DataTileManager dataTileManager, int tileSize, int sampleResolution, @Nullable SingleScreenTileLayer lastResolution, TileLayer.DiskFactory diskFactory, TileRegionStorage tileStorage, TileLayer.GenerationFactory generationFactory, int x, int z, LongSet sampledChunks) {
         TileLayer tileLayer;
         if (lastResolution != null) {
             TileLayer lastResTileLayer = lastResolution.tileLayer();
+            // Owns the reference retained on submit. It is handed to the new tile if it shares the layer, otherwise it is dropped
+            // once the layer was refined.
             if (!lastResTileLayer.usesLod()) {
                 lastResTileLayer.setSampleResolution(sampleResolution);
                 return lastResTileLayer;
@@ -396,7 +439,7 @@ public class RenderTileManager implements AutoCloseable {
 
             tileLayer = lastResTileLayer;
         } else {
-            tileLayer = readTileLayerFromDisk(tileSize, sampleResolution, diskFactory, imagePath, dataPath);
+            tileLayer = readTileLayerFromDisk(layerIdx, shiftingManager, tileSize, sampleResolution, diskFactory, tileStorage, x, z);
             if (tileLayer != null && tileLayer.isComplete()) {
                 return tileLayer;
             }
@@ -405,17 +448,21 @@ public class RenderTileManager implements AutoCloseable {
         boolean nullTileLayer = tileLayer == null;
 
         if (nullTileLayer) {
-            tileLayer = generateTile(dataTileManager, generationFactory, 63, x, z, tileSize, sampleResolution, dataPath, imagePath, sampledChunks, tileLayer);
+            tileLayer = generateTile(layerIdx, dataTileManager, generationFactory, 63, x, z, tileSize, sampleResolution, shiftingManager, tileStorage, sampledChunks, tileLayer);
         } else {
             if (!tileLayer.isComplete()) {
-                tileLayer.close();
-                tileLayer = generateTile(dataTileManager, generationFactory, 63, x, z, tileSize, sampleResolution, dataPath, imagePath, sampledChunks, null);
+                tileLayer.release();
+                tileLayer = generateTile(layerIdx, dataTileManager, generationFactory, 63, x, z, tileSize, sampleResolution, shiftingManager, tileStorage, sampledChunks, null);
             } else {
                 boolean resolutionsDontMatch = tileLayer.sampleRes() != shiftingManager.sampleResolution();
                 boolean usesLod = tileLayer.usesLod();
                 if (usesLod && resolutionsDontMatch) {
-                    tileLayer.close();
-                    tileLayer = generateTile(dataTileManager, generationFactory, 63, x, z, tileSize, tileLayer.sampleRes() >> 1, dataPath, imagePath, sampledChunks, tileLayer);
+                    TileLayer lowerResolution = tileLayer;
+                    try {
+                        tileLayer = generateTile(layerIdx, dataTileManager, generationFactory, 63, x, z, tileSize, lowerResolution.sampleRes() >> 1, shiftingManager, tileStorage, sampledChunks, lowerResolution);
+                    } finally {
+                        lowerResolution.release();
+                    }
                 }
             }
 
@@ -423,177 +470,137 @@ public class RenderTileManager implements AutoCloseable {
         return tileLayer;
     }
 
-    private static TileLayer readTileLayerFromDisk(int tileSize, int sampleResolution, @Nullable TileLayer.DiskFactory diskFactory, Path imagePath, Path dataPath) {
+    private static TileLayer readTileLayerFromDisk(int layerIdx, TileCoordinateShiftingManager shiftingManager, int tileSize, int sampleResolution, @Nullable TileLayer.DiskFactory diskFactory, TileRegionStorage tileStorage, int x, int z) {
         TileLayer tileLayer = null;
         if (diskFactory != null) {
+            long start = System.nanoTime();
+            TilePayload payload = null;
             try {
-                TileLayer fromDisk = diskFactory.fromDisk(tileSize, imagePath, dataPath, sampleResolution);
-                tileLayer = fromDisk;
+                payload = tileStorage.read(shiftingManager.blockToTile(x), shiftingManager.blockToTile(z), tileSize);
+                if (payload != null) {
+                    tileLayer = diskFactory.fromDisk(tileSize, payload.image(), payload.data(), sampleResolution);
+                }
             } catch (Exception e) {
                 e.printStackTrace();
+                if (payload != null && payload.image() != null) {
+                    NativeImagePool.release(payload.image());
+                }
             }
+            TileMetrics.recordDiskRead(layerIdx, tileLayer != null, System.nanoTime() - start);
         }
         return tileLayer;
     }
 
-    private static <T extends TileLayer> T generateTile(DataTileManager dataTileManager, TileLayer.GenerationFactory<T> generationFactory, int scrollY, int minTileWorldX, int minTileWorldZ, int size, int sampleRes, Path dataPath, Path imagePath, LongSet sampledChunks, @Nullable T lowerResolution) {
+    private static <T extends TileLayer> T generateTile(int layerIdx, DataTileManager dataTileManager, TileLayer.GenerationFactory<T> generationFactory, int scrollY, int minTileWorldX, int minTileWorldZ, int size, int sampleRes, TileCoordinateShiftingManager shiftingManager, TileRegionStorage tileStorage, LongSet sampledChunks, @Nullable T lowerResolution) {
         if (sampleRes < 1) {
             throw new IllegalArgumentException("Sample resolution must at least 1 to generate a tile layer.");
         }
-        T tileLayer1 = generationFactory.make(dataTileManager, scrollY, minTileWorldX, minTileWorldZ, size, sampleRes, sampledChunks, lowerResolution);
-        CompoundTag tag = tileLayer1.tag();
-        if (tag != null && tileLayer1.isComplete()) {
-
-            FILE_SAVING_EXECUTOR_SERVICE.submit(() -> {
-                try {
-                    ByteArrayDataOutput byteArrayDataOutput = ByteStreams.newDataOutput();
-                    NbtIo.write(tag, byteArrayDataOutput);
-                    File dataPathFile = dataPath.toFile();
-                    if (dataPathFile.exists()) {
-                        while (!dataPathFile.canWrite()) {
-                            Thread.sleep(1);
-                        }
-                    } else {
-                        Path parent = dataPath.getParent();
-                        if (!parent.toFile().exists()) {
-                            Files.createDirectories(parent);
-                        }
-                    }
-                    Files.write(dataPath, byteArrayDataOutput.toByteArray());
-                } catch (IOException | InterruptedException e) {
-                    e.printStackTrace();
-                }
-            });
-        }
-
-        NativeImage image = tileLayer1.image();
-        if (image != null) {
-            if (((NativeImageAccessor) (Object) image).wvGetPixels() != 0L) {
-                ((CloseCheck) (Object) image).setCanClose(false);
-                FILE_SAVING_EXECUTOR_SERVICE.submit(() -> {
-                    try {
-                        byte[] imageByteArray = image.asByteArray();
-                        File imagePathFile = imagePath.toFile();
-                        if (imagePathFile.exists()) {
-                            while (!imagePathFile.canWrite()) {
-                                Thread.sleep(1);
-                            }
-                        } else {
-                            Path parent = imagePath.getParent();
-                            if (!parent.toFile().exists()) {
-                                Files.createDirectories(parent);
-                            }
-                        }
-
-                        Files.write(imagePath, imageByteArray);
-                        ((CloseCheck) (Object) image).setCanClose(true);
-
-                        if (((CloseCheck) (Object) image).shouldClose()) {
-                            image.close();
-                        }
-                    } catch (IOException | InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                });
+        long start = System.nanoTime();
+        dataTileManager.prefetch(minTileWorldX, minTileWorldZ, size, sampleRes);
+        T tileLayer1 = generationFactory.make(dataTileManager, scrollY, minTileWorldX, minTileWorldZ, size, sampleRes, shiftingManager.sampleResolution(), sampledChunks, lowerResolution);
+        TileMetrics.recordGeneration(layerIdx, TileMetrics.lod(sampleRes, shiftingManager.sampleResolution()), System.nanoTime() - start);
+        CompoundTag tag = tileLayer1.isComplete() ? tileLayer1.tag() : null;
+        if (tag != null) {
+            try {
+                // Pixels are copied here so the image is free to be uploaded and closed while the write is pending.
+                byte[] payload = tileLayer1.encode(tag);
+                int tileX = shiftingManager.blockToTile(minTileWorldX);
+                int tileZ = shiftingManager.blockToTile(minTileWorldZ);
+                TILE_WRITE_QUEUE.enqueue(tileStorage, tileX, tileZ, size, payload);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
         return tileLayer1;
     }
 
     public void cull(WorldScreenv2 worldScreenv2) {
-        for (int loadedIdx = 0; loadedIdx < this.loaded.length; loadedIdx++) {
-            LongSet toRemove = new LongOpenHashSet();
-
-            this.loaded[loadedIdx].forEach((pos, tile) -> {
-                int minTileWorldX = tile.getMinTileWorldX();
-                int minTileWorldZ = tile.getMinTileWorldZ();
-                int maxTileWorldX = tile.getMaxTileWorldX();
-                int maxTileWorldZ = tile.getMaxTileWorldZ();
-                if (!worldScreenv2.worldViewArea.intersects(minTileWorldX, minTileWorldZ, maxTileWorldX, maxTileWorldZ)) {
-                    toRemove.add(pos);
-                }
-            });
-
-
-            Int2ObjectOpenHashMap<LongList> toRemoveRender = new Int2ObjectOpenHashMap<>();
-
-            this.toRender[loadedIdx].int2ObjectEntrySet().fastForEach(entry -> {
-                int scale = entry.getIntKey();
-                Long2ObjectOpenHashMap<ScreenTileLayer> tiles = entry.getValue();
-                LongList longs = toRemoveRender.computeIfAbsent(scale, key -> new LongArrayList());
-
-                tiles.long2ObjectEntrySet().fastForEach(screenTileEntry -> {
-                    long tilePos = screenTileEntry.getLongKey();
-                    ScreenTileLayer tile = screenTileEntry.getValue();
+        TileCoordinateShiftingManager shiftingManager = worldScreenv2.currentShiftingManager();
+        TileArea viewArea = TileArea.of(shiftingManager, worldScreenv2.worldViewArea);
+        TileArea previous = this.culledArea;
+        this.culledArea = viewArea;
+        this.tileLoadQueue.setOrigin(worldScreenv2.getOriginTile());
+        if (viewArea.equals(previous)) {
+            return;
+        }
+        this.tileLoadQueue.removeIf(tilePos -> !viewArea.contains(tilePos));
 
-                    int minTileWorldX = tile.getMinTileWorldX();
-                    int minTileWorldZ = tile.getMinTileWorldZ();
-                    int maxTileWorldX = tile.getMaxTileWorldX();
-                    int maxTileWorldZ = tile.getMaxTileWorldZ();
-                    if (!worldScreenv2.worldViewArea.intersects(minTileWorldX, minTileWorldZ, maxTileWorldX, maxTileWorldZ)) {
-                        if (tile.canClose()) {
-                            tile.closeAll();
-                        } else {
-                            tile.releaseDynamicTextureID();
-                            tile.setShouldClose(true);
-                        }
-                        longs.add(tilePos);
+        for (int loadedIdx = 0; loadedIdx < this.loaded.length; loadedIdx++) {
+            int layerIdx = loadedIdx;
+            if (previous != null && previous.shift() == viewArea.shift()) {
+                // Every tile was in the previous area, so only the strips the view left can hold tiles to cull.
+                int[] scales = this.toRender[layerIdx].keySet().toIntArray();
+                previous.forEachOutside(viewArea, tilePos -> {
+                    this.loaded[layerIdx].remove(tilePos);
+                    for (int scale : scales) {
+                        int tileX = Math.floorDiv(LongPackingUtil.getTileX(tilePos), scale) * scale;
+                        int tileZ = Math.floorDiv(LongPackingUtil.getTileZ(tilePos), scale) * scale;
+                        cullScreenTile(layerIdx, scale, LongPackingUtil.tileKey(tileX, tileZ), viewArea);
                     }
                 });
-            });
-
-            int finalLoadedIdx = loadedIdx;
-            toRemoveRender.int2ObjectEntrySet().fastForEach(longListEntry -> {
-                int scale = longListEntry.getIntKey();
-                LongList tiles = longListEntry.getValue();
-                Long2ObjectOpenHashMap<ScreenTileLayer> longScreenTileMap = this.toRender[finalLoadedIdx].get(scale);
-                tiles.forEach(key -> {
-                    ScreenTileLayer remove = longScreenTileMap.remove(key);
-                    if (remove != null) {
-                        if (remove.canClose()) {
-                            remove.closeAll();
-                        } else {
-                            remove.releaseDynamicTextureID();
-                            remove.setShouldClose(true);
-                        }
+            } else {
+                this.loaded[layerIdx].keySet().removeIf(tilePos -> !viewArea.contains(tilePos));
+                for (int scale : this.toRender[layerIdx].keySet().toIntArray()) {
+                    for (long tilePos : this.toRender[layerIdx].get(scale).keySet().toLongArray()) {
+                        cullScreenTile(layerIdx, scale, tilePos, viewArea);
                     }
-                });
-
-                if (longScreenTileMap.isEmpty()) {
-                    this.toRender[finalLoadedIdx].remove(scale);
                 }
-            });
+            }
+            this.toRender[layerIdx].values().removeIf(Long2ObjectOpenHashMap::isEmpty);
+        }
+    }
 
-            toRemove.forEach(loaded[finalLoadedIdx]::remove);
+    private void cullScreenTile(int layerIdx, int scale, long tilePos, TileArea viewArea) {
+        Long2ObjectOpenHashMap<ScreenTileLayer> tiles = this.toRender[layerIdx].get(scale);
+        if (tiles == null || viewArea.intersects(tilePos, scale)) {
+            return;
+        }
+        ScreenTileLayer remove = tiles.remove(tilePos);
+        if (remove != null) {
+            remove.release();
         }
     }
 
     @Override
     public void close() {
-        this.executorService.shutdownNow();
+        this.tileGenerationExecutor.close();
         for (Long2ObjectOpenHashMap<SingleScreenTileLayer> loaded : this.loaded) {
             loaded.long2ObjectEntrySet().fastForEach(singleScreenTileLayerEntry -> {
-                singleScreenTileLayerEntry.getValue().closeAll();
+                singleScreenTileLayerEntry.getValue().release();
             });
         }
 
         for (Int2ObjectOpenHashMap<Long2ObjectOpenHashMap<ScreenTileLayer>> rendered : this.toRender) {
             rendered.int2ObjectEntrySet().fastForEach(entry -> {
                 entry.getValue().long2ObjectEntrySet().fastForEach(screenTileLayerEntry -> {
-                    screenTileLayerEntry.getValue().closeAll();
+                    screenTileLayerEntry.getValue().release();
                 });
             });
         }
 
+        for (TileAtlas atlas : this.atlases) {
+            atlas.close();
+        }
+
+        NativeImagePool.clear();
+        ImageLeakTracker.logReport();
+
         this.dataTileManager.close();
+        for (TileRegionStorage tileStorage : this.tileStorages) {
+            TILE_WRITE_QUEUE.closeRegionsWhenDrained(tileStorage);
+        }
     }
 
     public void onScroll(int delta) {
+        // Tile keys change meaning with the shift, the next cull scans every tile.
+        this.culledArea = null;
         // Run on Render Thread.
         Minecraft.getInstance().submit(() -> {
             for (Long2ObjectOpenHashMap<SingleScreenTileLayer> loaded : this.loaded) {
                 loaded.long2ObjectEntrySet().fastForEach(singleScreenTileLayerEntry -> {
-                    singleScreenTileLayerEntry.getValue().closeAll();
+                    singleScreenTileLayerEntry.getValue().release();
                 });
                 loaded.clear();
             }
@@ -601,30 +608,38 @@ public class RenderTileManager implements AutoCloseable {
             for (Int2ObjectOpenHashMap<Long2ObjectOpenHashMap<ScreenTileLayer>> rendered : this.toRender) {
                 rendered.int2ObjectEntrySet().fastForEach(entry -> {
                     entry.getValue().long2ObjectEntrySet().fastForEach(screenTileLayerEntry -> {
-                        screenTileLayerEntry.getValue().closeAll();
+                        screenTileLayerEntry.getValue().release();
                     });
                 });
                 rendered.clear();
             }
-            this.executorService.shutdownNow();
+            this.tileLoadQueue.clear();
+            this.tileGenerationExecutor.cancelPending();
             for (Long2ObjectLinkedOpenHashMap<CompletableFuture<SingleScreenTileLayer>> futures : this.trackedTileLayerFutures) {
+                futures.values().forEach(future -> future.cancel(false));
                 futures.clear();
             }
-            this.executorService = createExecutor("Screen-Tile-Generator-IO");
         });
 
 
 
 
+    }
+
+    private record TexturedTile(ScreenTileLayer tile, TextureRegion texture) {
     }
 
     public static ExecutorService createExecutor(String name) {
-        return createExecutor(Mth.clamp((Runtime.getRuntime().availableProcessors() - 1) / 2, 1, 25), name);
+        return createExecutor(GENERATOR_THREADS, name);
     }
 
     public static ExecutorService createExecutor(int processors, String name) {
+        return Executors.newFixedThreadPool(processors, namedThreadFactory(name));
+    }
+
+    public static ThreadFactory namedThreadFactory(String name) {
         MutableInt count = new MutableInt(1);
-        return Executors.newFixedThreadPool(processors, new ThreadFactory() {
+        return new ThreadFactory() {
             private final ThreadFactory backing = Executors.defaultThreadFactory();
 
             @Override
@@ -635,6 +650,6 @@ public class RenderTileManager implements AutoCloseable {
                 thread.setDaemon(true);
                 return thread;
             }
-        });
+        };
     }
 }
@@ -1,13 +1,14 @@
 package dev.corgitaco.worldviewer.client.tile;
 
 import com.mojang.blaze3d.platform.NativeImage;
-import dev.corgitaco.worldviewer.client.CloseCheck;
 import dev.corgitaco.worldviewer.client.screen.WorldScreenv2;
+import dev.corgitaco.worldviewer.client.tile.atlas.TextureRegion;
+import dev.corgitaco.worldviewer.client.tile.atlas.TileAtlas;
 import dev.corgitaco.worldviewer.client.tile.tilelayer.TileLayer;
 import net.minecraft.client.gui.GuiGraphics;
 import org.jetbrains.annotations.Nullable;
 
-public interface ScreenTileLayer extends CloseCheck {
+public interface ScreenTileLayer {
 
 
     int getMinTileWorldX();
@@ -19,7 +20,27 @@ public interface ScreenTileLayer extends CloseCheck {
 
     int getMaxTileWorldZ();
 
-    void renderTile(GuiGraphics guiGraphics, float scale, float opacity, RenderTileContext worldScreenv2);
+    /**
+     * Uploads the tile to {@code atlas} the first time it is drawn, or to a texture of its own if it doesn't fit, called on the
+     * render thread.
+     *
+     * @return the region to draw the tile from, null if there is nothing to draw.
+     */
+    @Nullable
+    TextureRegion texture(TileAtlas atlas);
+
+    /**
+     * @return the tile's slot in the atlas, null until {@link #texture} placed it there.
+     */
+    @Nullable
+    TileAtlas.Allocation atlasAllocation();
+
+    /**
+     * @return the width in pixels the tile is displayed at, 0 if it has no pixels yet.
+     */
+    int displayWidth();
+
+    void renderTile(GuiGraphics guiGraphics, TextureRegion texture, float scale, float opacity, RenderTileContext worldScreenv2);
 
     TileLayer.Renderer renderer();
 
@@ -34,14 +55,9 @@ public interface ScreenTileLayer extends CloseCheck {
 
     void setShouldRender(boolean shouldRender);
 
-    void closeDynamicTexture();
-
-    void releaseDynamicTextureID();
-
-    void closeNativeImage();
-
-    default void closeAll() {
-        closeNativeImage();
-        closeDynamicTexture();
-    }
+    /**
+     * Frees the tile's textures and drops its references to tile layer images, which are closed once nothing else holds them.
+     * Releasing an already released tile does nothing.
+     */
+    void release();
 }
@@ -1,8 +1,12 @@
 package dev.corgitaco.worldviewer.client.tile;
 
 import com.mojang.blaze3d.platform.NativeImage;
-import dev.corgitaco.worldviewer.client.CloseCheck;
+import dev.corgitaco.worldviewer.client.ImageLeakTracker;
+import dev.corgitaco.worldviewer.client.RenderTypeCache;
 import dev.corgitaco.worldviewer.client.screen.WorldScreenv2;
+import dev.corgitaco.worldviewer.client.tile.atlas.TextureRegion;
+import dev.corgitaco.worldviewer.client.tile.atlas.TileAtlas;
+import dev.corgitaco.worldviewer.client.tile.metrics.TileMetrics;
 import dev.corgitaco.worldviewer.client.tile.tilelayer.TileLayer;
 import net.minecraft.client.gui.GuiGraphics;
 import net.minecraft.client.renderer.texture.DynamicTexture;
@@ -10,6 +14,7 @@ import net.minecraft.network.chat.Component;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SingleScreenTileLayer implements ScreenTileLayer {
 
@@ -19,6 +24,11 @@ public class SingleScreenTileLayer implements ScreenTileLayer {
     @Nullable
     public DynamicTexture dynamicTexture;
 
+    @Nullable
+    private TileAtlas atlas;
+    @Nullable
+    private TileAtlas.Allocation atlasAllocation;
+
     private final int minTileWorldX;
     private final int minTileWorldZ;
     private final int size;
@@ -28,7 +38,11 @@ public class SingleScreenTileLayer implements ScreenTileLayer {
     private final int sampleRes;
 
     private boolean shouldRender = true;
+    private final AtomicBoolean released = new AtomicBoolean();
 
+    /**
+     * Takes over one reference to {@code tileLayer}, given up again by {@link #release()}.
+     */
     public SingleScreenTileLayer(TileLayer tileLayer, int minTileWorldX, int minTileWorldZ, int size) {
         this.tileLayer = tileLayer;
         this.minTileWorldX = minTileWorldX;
@@ -37,6 +51,7 @@ public class SingleScreenTileLayer implements ScreenTileLayer {
         this.maxTileWorldX = minTileWorldX + size;
         this.maxTileWorldZ = minTileWorldZ + size;
         this.sampleRes = this.tileLayer.sampleRes();
+        ImageLeakTracker.assign(tileLayer.image(), tileLayer.getClass().getSimpleName());
     }
 
 
@@ -69,12 +84,48 @@ public class SingleScreenTileLayer implements ScreenTileLayer {
     }
 
     @Override
-    public void renderTile(GuiGraphics guiGraphics, float scale, float opacity, RenderTileContext renderTileContext) {
-        if (shouldRender && this.tileLayer.image() != null) {
+    @Nullable
+    public TextureRegion texture(TileAtlas atlas) {
+        if (this.tileLayer.image() == null) {
+            return null;
+        }
+        if (this.atlasAllocation != null) {
+            return this.atlasAllocation.region();
+        }
+        TileAtlas.Allocation allocation = atlas.allocate(this.tileLayer.displayWidth());
+        if (allocation != null) {
+            this.tileLayer.uploadDisplay(allocation.x(), allocation.y());
+            this.atlas = atlas;
+            this.atlasAllocation = allocation;
+            return allocation.region();
+        }
+
+        int textureId = this.tileLayer.textureId();
+        if (textureId == -1) {
             if (this.dynamicTexture == null) {
                 this.dynamicTexture = new DynamicTexture(this.tileLayer.image());
+                TileMetrics.recordUpload();
             }
-            renderer().render(guiGraphics, size, this.dynamicTexture.getId(), opacity, renderTileContext);
+            textureId = this.dynamicTexture.getId();
+        }
+        return textureId != 0 ? TextureRegion.whole(textureId) : null;
+    }
+
+    @Override
+    @Nullable
+    public TileAtlas.Allocation atlasAllocation() {
+        return this.atlasAllocation;
+    }
+
+    @Override
+    public int displayWidth() {
+        return this.tileLayer.image() != null ? this.tileLayer.displayWidth() : 0;
+    }
+
+    @Override
+    public void renderTile(GuiGraphics guiGraphics, TextureRegion texture, float scale, float opacity, RenderTileContext renderTileContext) {
+        if (shouldRender) {
+            renderer().render(guiGraphics, size, texture, opacity, renderTileContext);
         }
     }
 
@@ -117,56 +168,28 @@ public class SingleScreenTileLayer implements ScreenTileLayer {
     }
 
     @Override
-    public void closeDynamicTexture() {
-        if (this.dynamicTexture != null) {
-            this.dynamicTexture.close();
+    public void release() {
+        if (!this.released.compareAndSet(false, true)) {
+            return;
         }
-    }
-
-    @Override
-    public void releaseDynamicTextureID() {
+        freeAtlasSlot();
         if (this.dynamicTexture != null) {
+            RenderTypeCache.evict(this.dynamicTexture.getId());
+            // The image belongs to the tile layer, closing the texture would close it for every other holder.
             this.dynamicTexture.releaseId();
+            this.dynamicTexture = null;
         }
+        this.tileLayer.release();
     }
 
-    public TileLayer tileLayer() {
-        return tileLayer;
-    }
-
-    @Override
-    public void closeNativeImage() {
-        this.tileLayer.close();
-    }
-
-    @Override
-    public boolean canClose() {
-        if (image() == null) {
-            return true;
-        }
-        return ((CloseCheck)(Object) this.image()).canClose();
-    }
-
-    @Override
-    public void setCanClose(boolean canClose) {
-        if (image() != null) {
-
-            ((CloseCheck)(Object) this.image()).setCanClose(canClose);
+    private void freeAtlasSlot() {
+        if (this.atlasAllocation != null) {
+            this.atlas.free(this.atlasAllocation);
+            this.atlasAllocation = null;
         }
     }
 
-    @Override
-    public boolean shouldClose() {
-        if (image() == null) {
-            return true;
-        }
-        return ((CloseCheck)(Object) this.image()).shouldClose();
-    }
-
-    @Override
-    public void setShouldClose(boolean shouldClose) {
-        if (image() != null) {
-            ((CloseCheck)(Object) this.image()).setShouldClose(shouldClose);
-        }
+    public TileLayer tileLayer() {
+        return tileLayer;
     }
 }
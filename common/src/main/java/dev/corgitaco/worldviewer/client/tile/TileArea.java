@@ -0,0 +1,52 @@
+package dev.corgitaco.worldviewer.client.tile;
+
+import dev.corgitaco.worldviewer.util.LongPackingUtil;
+import it.unimi.dsi.fastutil.longs.LongConsumer;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+
+/**
+ * An inclusive rectangle of tile coordinates at one shift.
+ */
+public record TileArea(int shift, int minTileX, int minTileZ, int maxTileX, int maxTileZ) {
+
+    /**
+     * @return the tiles that intersect {@code worldViewArea}.
+     */
+    public static TileArea of(TileCoordinateShiftingManager shiftingManager, BoundingBox worldViewArea) {
+        return new TileArea(shiftingManager.getShift(),
+                shiftingManager.blockToTile(worldViewArea.minX()), shiftingManager.blockToTile(worldViewArea.minZ()),
+                shiftingManager.blockToTile(worldViewArea.maxX()), shiftingManager.blockToTile(worldViewArea.maxZ()));
+    }
+
+    public boolean contains(long tilePos) {
+        int tileX = LongPackingUtil.getTileX(tilePos);
+        int tileZ = LongPackingUtil.getTileZ(tilePos);
+        return tileX >= this.minTileX && tileX <= this.maxTileX && tileZ >= this.minTileZ && tileZ <= this.maxTileZ;
+    }
+
+    /**
+     * @return true if the {@code scale x scale} block of tiles starting at {@code tilePos} intersects this area.
+     */
+    public boolean intersects(long tilePos, int scale) {
+        int tileX = LongPackingUtil.getTileX(tilePos);
+        int tileZ = LongPackingUtil.getTileZ(tilePos);
+        return tileX + scale - 1 >= this.minTileX && tileX <= this.maxTileX && tileZ + scale - 1 >= this.minTileZ && tileZ <= this.maxTileZ;
+    }
+
+    /**
+     * Visits the tiles of this area that are outside of {@code other}, the strips a view moving from this area to {@code other} left.
+     */
+    public void forEachOutside(TileArea other, LongConsumer consumer) {
+        for (int tileX = this.minTileX; tileX <= this.maxTileX; tileX++) {
+            boolean columnInside = tileX >= other.minTileX && tileX <= other.maxTileX;
+            for (int tileZ = this.minTileZ; tileZ <= this.maxTileZ; tileZ++) {
+                if (columnInside && tileZ >= other.minTileZ && tileZ <= other.maxTileZ) {
+                    // Skip the overlap, the rest of the column is past it.
+                    tileZ = other.maxTileZ;
+                    continue;
+                }
+                consumer.accept(LongPackingUtil.tileKey(tileX, tileZ));
+            }
+        }
+    }
+}
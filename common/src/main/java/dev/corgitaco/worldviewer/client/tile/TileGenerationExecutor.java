@@ -0,0 +1,171 @@
+package dev.corgitaco.worldviewer.client.tile;
+
+import dev.corgitaco.worldviewer.util.LongPackingUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Fixed size tile generation pool backed by a priority queue ordered by tile distance from the current origin.
+ * <p>
+ * Worker threads live for as long as the executor, so zoom changes only cancel and re-sort pending jobs. Cancelled jobs are
+ * skipped when dequeued and running jobs can poll {@link #isCurrentTaskCancelled()} to bail out early.
+ */
+public class TileGenerationExecutor implements AutoCloseable {
+
+    private static final ThreadLocal<Task<?>> CURRENT_TASK = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executor;
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile int originTileX;
+    private volatile int originTileZ;
+    private volatile int shift;
+
+    public TileGenerationExecutor(int threads, String name, long originTile, int shift) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, this.queue, RenderTileManager.namedThreadFactory(name));
+        this.executor.prestartAllCoreThreads();
+        this.originTileX = LongPackingUtil.getTileX(originTile);
+        this.originTileZ = LongPackingUtil.getTileZ(originTile);
+        this.shift = shift;
+    }
+
+    public static boolean isCurrentTaskCancelled() {
+        Task<?> task = CURRENT_TASK.get();
+        return task != null && task.future.isDone();
+    }
+
+    public <T> CompletableFuture<T> submit(long tilePos, int shift, Supplier<T> supplier, Consumer<T> discard) {
+        return submit(tilePos, shift, supplier, discard, () -> {
+        });
+    }
+
+    /**
+     * @param skipped run if the job is cancelled before its supplier started, so resources handed to the supplier on submit can be
+     *                released by whoever would have consumed them.
+     */
+    public <T> CompletableFuture<T> submit(long tilePos, int shift, Supplier<T> supplier, Consumer<T> discard, Runnable skipped) {
+        Task<T> task = new Task<>(tilePos, shift, this.sequence.getAndIncrement(), supplier, discard);
+        task.priority = priority(task);
+        task.future.whenComplete((result, throwable) -> {
+            if (task.started.compareAndSet(false, true)) {
+                skipped.run();
+            }
+        });
+        this.executor.execute(task);
+        return task.future;
+    }
+
+    /**
+     * Re-sorts every pending job around the given origin. Jobs for another shift can never be displayed and are cancelled.
+     */
+    public void reprioritize(long originTile, int shift) {
+        int originTileX = LongPackingUtil.getTileX(originTile);
+        int originTileZ = LongPackingUtil.getTileZ(originTile);
+        if (originTileX == this.originTileX && originTileZ == this.originTileZ && shift == this.shift) {
+            return;
+        }
+        this.originTileX = originTileX;
+        this.originTileZ = originTileZ;
+        this.shift = shift;
+
+        List<Runnable> pending = new ArrayList<>(this.queue.size());
+        this.queue.drainTo(pending);
+        for (Runnable runnable : pending) {
+            Task<?> task = (Task<?>) runnable;
+            if (task.future.isDone()) {
+                continue;
+            }
+            if (task.shift != shift) {
+                task.future.cancel(false);
+                continue;
+            }
+            task.priority = priority(task);
+            this.queue.offer(task);
+        }
+    }
+
+    public void cancelPending() {
+        List<Runnable> pending = new ArrayList<>(this.queue.size());
+        this.queue.drainTo(pending);
+        for (Runnable runnable : pending) {
+            ((Task<?>) runnable).future.cancel(false);
+        }
+    }
+
+    public int pendingCount() {
+        return this.queue.size();
+    }
+
+    private long priority(Task<?> task) {
+        if (task.shift != this.shift) {
+            return Long.MAX_VALUE;
+        }
+        long dx = LongPackingUtil.getTileX(task.tilePos) - this.originTileX;
+        long dz = LongPackingUtil.getTileZ(task.tilePos) - this.originTileZ;
+        return dx * dx + dz * dz;
+    }
+
+    @Override
+    public void close() {
+        cancelPending();
+        this.executor.shutdownNow();
+    }
+
+    private static final class Task<T> implements Runnable, Comparable<Task<?>> {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        // Set by whichever comes first, the supplier starting or the future completing without it.
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final long tilePos;
+        private final int shift;
+        private final long sequence;
+        private final Supplier<T> supplier;
+        private final Consumer<T> discard;
+
+        private long priority;
+
+        private Task(long tilePos, int shift, long sequence, Supplier<T> supplier, Consumer<T> discard) {
+            this.tilePos = tilePos;
+            this.shift = shift;
+            this.sequence = sequence;
+            this.supplier = supplier;
+            this.discard = discard;
+        }
+
+        @Override
+        public void run() {
+            if (this.future.isDone() || !this.started.compareAndSet(false, true)) {
+                return;
+            }
+
+            CURRENT_TASK.set(this);
+            try {
+                @Nullable T result = this.supplier.get();
+                if (!this.future.complete(result) && result != null) {
+                    this.discard.accept(result);
+                }
+            } catch (Throwable throwable) {
+                this.future.completeExceptionally(throwable);
+            } finally {
+                CURRENT_TASK.remove();
+            }
+        }
+
+        @Override
+        public int compareTo(@NotNull Task<?> other) {
+            int compare = Long.compare(this.priority, other.priority);
+            return compare != 0 ? compare : Long.compare(this.sequence, other.sequence);
+        }
+    }
+}
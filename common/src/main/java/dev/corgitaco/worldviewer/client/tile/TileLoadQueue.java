@@ -0,0 +1,171 @@
+package dev.corgitaco.worldviewer.client.tile;
+
+import dev.corgitaco.worldviewer.util.LongPackingUtil;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongPredicate;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Primitive binary min-heap of tile keys ordered by their squared tile distance from an origin tile.
+ * <p>
+ * Every tile key is held at most once. Moving the origin re-heapifies the queued keys in place instead of rebuilding the queue.
+ */
+public class TileLoadQueue {
+
+    private long[] heap = new long[64];
+    private int size;
+
+    private final LongOpenHashSet queued = new LongOpenHashSet();
+
+    private int originTileX;
+    private int originTileZ;
+
+    public TileLoadQueue(long originTile) {
+        this.originTileX = LongPackingUtil.getTileX(originTile);
+        this.originTileZ = LongPackingUtil.getTileZ(originTile);
+    }
+
+    public boolean enqueue(long tileKey) {
+        if (!this.queued.add(tileKey)) {
+            return false;
+        }
+
+        if (this.size == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, this.heap.length << 1);
+        }
+        this.heap[this.size] = tileKey;
+        siftUp(this.size++);
+        return true;
+    }
+
+    public long dequeue() {
+        if (this.size == 0) {
+            throw new NoSuchElementException("Tile load queue is empty.");
+        }
+
+        long first = this.heap[0];
+        this.heap[0] = this.heap[--this.size];
+        if (this.size > 0) {
+            siftDown(0);
+        }
+        this.queued.remove(first);
+        return first;
+    }
+
+    public long peek() {
+        if (this.size == 0) {
+            throw new NoSuchElementException("Tile load queue is empty.");
+        }
+        return this.heap[0];
+    }
+
+    public boolean contains(long tileKey) {
+        return this.queued.contains(tileKey);
+    }
+
+    /**
+     * Moves the origin tile and restores heap order around it in O(n).
+     */
+    public void setOrigin(long originTile) {
+        int originTileX = LongPackingUtil.getTileX(originTile);
+        int originTileZ = LongPackingUtil.getTileZ(originTile);
+        if (originTileX == this.originTileX && originTileZ == this.originTileZ) {
+            return;
+        }
+        this.originTileX = originTileX;
+        this.originTileZ = originTileZ;
+        heapify();
+    }
+
+    /**
+     * Drops every queued tile key matching the given filter, e.g. tiles that have left the view area.
+     */
+    public void removeIf(LongPredicate filter) {
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            long tileKey = this.heap[i];
+            if (filter.test(tileKey)) {
+                this.queued.remove(tileKey);
+            } else {
+                this.heap[kept++] = tileKey;
+            }
+        }
+
+        if (kept != this.size) {
+            this.size = kept;
+            heapify();
+        }
+    }
+
+    public void clear() {
+        this.size = 0;
+        this.queued.clear();
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public long distanceSquared(long tileKey) {
+        long dx = LongPackingUtil.getTileX(tileKey) - this.originTileX;
+        long dz = LongPackingUtil.getTileZ(tileKey) - this.originTileZ;
+        return dx * dx + dz * dz;
+    }
+
+    private void heapify() {
+        for (int i = (this.size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftUp(int idx) {
+        long[] heap = this.heap;
+        long tileKey = heap[idx];
+        long distance = distanceSquared(tileKey);
+        while (idx > 0) {
+            int parent = (idx - 1) >>> 1;
+            long parentKey = heap[parent];
+            if (distanceSquared(parentKey) <= distance) {
+                break;
+            }
+            heap[idx] = parentKey;
+            idx = parent;
+        }
+        heap[idx] = tileKey;
+    }
+
+    private void siftDown(int idx) {
+        long[] heap = this.heap;
+        long tileKey = heap[idx];
+        long distance = distanceSquared(tileKey);
+        int half = this.size >>> 1;
+        while (idx < half) {
+            int child = (idx << 1) + 1;
+            long childKey = heap[child];
+            long childDistance = distanceSquared(childKey);
+
+            int right = child + 1;
+            if (right < this.size) {
+                long rightDistance = distanceSquared(heap[right]);
+                if (rightDistance < childDistance) {
+                    child = right;
+                    childKey = heap[right];
+                    childDistance = rightDistance;
+                }
+            }
+
+            if (distance <= childDistance) {
+                break;
+            }
+            heap[idx] = childKey;
+            idx = child;
+        }
+        heap[idx] = tileKey;
+    }
+}
@@ -0,0 +1,67 @@
+package dev.corgitaco.worldviewer.client.tile;
+
+import dev.corgitaco.worldviewer.util.LongPackingUtil;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongPredicate;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which 2x2 groups of screen tiles at one scale are merged into a tile of the next scale. Tiles are only identified by
+ * their keys, so planning needs neither images nor a GL context.
+ */
+public final class TileMergePlanner {
+
+    private TileMergePlanner() {
+    }
+
+    /**
+     * @param tiles         keys of the tiles at {@code scale}, keyed by the tile coordinates of their minimum corner.
+     * @param mergeable     whether the tile of a key is ready to be merged.
+     * @param parentPresent whether a key already has a tile at {@code scale * 2}.
+     * @return the merges for every group of four mergeable tiles whose parent doesn't exist yet.
+     */
+    public static List<Merge> plan(int scale, LongSet tiles, LongPredicate mergeable, LongPredicate parentPresent) {
+        int newScale = scale << 1;
+        List<Merge> merges = new ArrayList<>();
+        for (LongIterator iterator = tiles.iterator(); iterator.hasNext(); ) {
+            long tilePos = iterator.nextLong();
+            int parentTileX = Math.floorDiv(LongPackingUtil.getTileX(tilePos), newScale) * newScale;
+            int parentTileZ = Math.floorDiv(LongPackingUtil.getTileZ(tilePos), newScale) * newScale;
+            long parentKey = LongPackingUtil.tileKey(parentTileX, parentTileZ);
+            // Every group is visited from its minimum corner only.
+            if (tilePos != parentKey || parentPresent.test(parentKey)) {
+                continue;
+            }
+
+            long[] children = new long[4];
+            boolean complete = true;
+            for (int offsetX = 0; offsetX < 2 && complete; offsetX++) {
+                for (int offsetZ = 0; offsetZ < 2; offsetZ++) {
+                    long child = LongPackingUtil.tileKey(parentTileX + offsetX * scale, parentTileZ + offsetZ * scale);
+                    if (!tiles.contains(child) || !mergeable.test(child)) {
+                        complete = false;
+                        break;
+                    }
+                    children[offsetX * 2 + offsetZ] = child;
+                }
+            }
+            if (complete) {
+                merges.add(new Merge(scale, parentKey, children));
+            }
+        }
+        return merges;
+    }
+
+    /**
+     * @param children the keys of the merged tiles, {@code children[x * 2 + z]} being the tile at offset {@code (x, z)}.
+     */
+    public record Merge(int scale, long parentKey, long[] children) {
+
+        public int newScale() {
+            return this.scale << 1;
+        }
+    }
+}
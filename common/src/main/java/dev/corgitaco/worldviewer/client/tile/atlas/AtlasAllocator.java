@@ -0,0 +1,160 @@
+package dev.corgitaco.worldviewer.client.tile.atlas;
+
+import it.unimi.dsi.fastutil.ints.IntAVLTreeSet;
+import it.unimi.dsi.fastutil.longs.LongAVLTreeSet;
+import net.minecraft.util.Mth;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Packs square slots into square pages of {@code pageSize} texels with a buddy allocator. Slots are rounded up to powers of two
+ * no smaller than {@code minSlotSize}, a free slot is split into quarters until it fits and freed quarters are merged back as soon
+ * as all four are free. New pages are added when no free slot is large enough, a page found empty by {@link #isPageEmpty} can be
+ * handed back with {@link #releasePage} and its index is reused by the next new page.
+ * <p>
+ * This only does the bookkeeping, it never touches GL, and it is not thread safe.
+ */
+public class AtlasAllocator {
+
+    private final int pageSize;
+    private final int minSlotSize;
+    // Free slots by level, level 0 being a whole page. Keys sort by page first, so allocations fill the first pages first.
+    private final LongAVLTreeSet[] free;
+    private final IntAVLTreeSet releasedPages = new IntAVLTreeSet();
+    private int pageCount;
+
+    public AtlasAllocator(int pageSize, int minSlotSize) {
+        if (!Mth.isPowerOfTwo(pageSize) || !Mth.isPowerOfTwo(minSlotSize) || minSlotSize > pageSize) {
+            throw new IllegalArgumentException("Page size %s and minimum slot size %s must be powers of two with the slot no larger than the page.".formatted(pageSize, minSlotSize));
+        }
+        if (pageSize / minSlotSize > 1 << 16) {
+            throw new IllegalArgumentException("Page size %s holds more than 65536 slots of size %s per row.".formatted(pageSize, minSlotSize));
+        }
+        this.pageSize = pageSize;
+        this.minSlotSize = minSlotSize;
+        this.free = new LongAVLTreeSet[Mth.log2(pageSize / minSlotSize) + 1];
+        for (int level = 0; level < this.free.length; level++) {
+            this.free[level] = new LongAVLTreeSet();
+        }
+    }
+
+    /**
+     * @return a slot of at least {@code width x width} texels, or null if {@code width} is larger than a page.
+     */
+    @Nullable
+    public Slot allocate(int width) {
+        if (width <= 0 || width > this.pageSize) {
+            return null;
+        }
+        int targetLevel = levelFor(width);
+        int level = targetLevel;
+        while (level >= 0 && this.free[level].isEmpty()) {
+            level--;
+        }
+        long key;
+        if (level < 0) {
+            int page = this.releasedPages.isEmpty() ? this.pageCount++ : this.releasedPages.firstInt();
+            this.releasedPages.remove(page);
+            key = key(page, 0, 0);
+            level = 0;
+        } else {
+            key = this.free[level].firstLong();
+            this.free[level].remove(key);
+        }
+
+        int page = page(key);
+        int x = x(key);
+        int y = y(key);
+        while (level < targetLevel) {
+            level++;
+            int half = slotSize(level);
+            this.free[level].add(key(page, x + half, y));
+            this.free[level].add(key(page, x, y + half));
+            this.free[level].add(key(page, x + half, y + half));
+        }
+        return new Slot(page, x, y, slotSize(targetLevel));
+    }
+
+    public void free(Slot slot) {
+        int level = levelFor(slot.size());
+        int x = slot.x();
+        int y = slot.y();
+        while (level > 0) {
+            int parentSize = slotSize(level - 1);
+            int parentX = x & -parentSize;
+            int parentY = y & -parentSize;
+            int half = slotSize(level);
+            LongAVLTreeSet free = this.free[level];
+            long a = key(slot.page(), parentX, parentY);
+            long b = key(slot.page(), parentX + half, parentY);
+            long c = key(slot.page(), parentX, parentY + half);
+            long d = key(slot.page(), parentX + half, parentY + half);
+            long self = key(slot.page(), x, y);
+            if ((a == self || free.contains(a)) && (b == self || free.contains(b)) && (c == self || free.contains(c)) && (d == self || free.contains(d))) {
+                free.remove(a);
+                free.remove(b);
+                free.remove(c);
+                free.remove(d);
+                x = parentX;
+                y = parentY;
+                level--;
+            } else {
+                break;
+            }
+        }
+        this.free[level].add(key(slot.page(), x, y));
+    }
+
+    public int pageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * @return the pages currently in use, released pages excluded.
+     */
+    public int pageCount() {
+        return this.pageCount - this.releasedPages.size();
+    }
+
+    public boolean isPageEmpty(int page) {
+        return page < this.pageCount && this.free[0].contains(key(page, 0, 0));
+    }
+
+    /**
+     * Forgets an empty page, slots are no longer allocated from it until its index is reused for a new page.
+     */
+    public void releasePage(int page) {
+        if (!isPageEmpty(page)) {
+            throw new IllegalStateException("Page %s still has allocated slots.".formatted(page));
+        }
+        this.free[0].remove(key(page, 0, 0));
+        this.releasedPages.add(page);
+    }
+
+    private int levelFor(int width) {
+        int size = Math.max(Mth.smallestEncompassingPowerOfTwo(width), this.minSlotSize);
+        return Mth.log2(this.pageSize / size);
+    }
+
+    private int slotSize(int level) {
+        return this.pageSize >> level;
+    }
+
+    private long key(int page, int x, int y) {
+        return ((long) page << 32) | ((long) (x / this.minSlotSize) << 16) | (y / this.minSlotSize);
+    }
+
+    private static int page(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private int x(long key) {
+        return (int) ((key >>> 16) & 0xFFFF) * this.minSlotSize;
+    }
+
+    private int y(long key) {
+        return (int) (key & 0xFFFF) * this.minSlotSize;
+    }
+
+    public record Slot(int page, int x, int y, int size) {
+    }
+}
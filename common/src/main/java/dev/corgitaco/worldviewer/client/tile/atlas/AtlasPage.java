@@ -0,0 +1,35 @@
+package dev.corgitaco.worldviewer.client.tile.atlas;
+
+import com.mojang.blaze3d.platform.TextureUtil;
+import dev.corgitaco.worldviewer.client.RenderTypeCache;
+import net.minecraft.client.renderer.texture.AbstractTexture;
+import net.minecraft.server.packs.resources.ResourceManager;
+
+/**
+ * One {@code size x size} texture of a {@link TileAtlas}, render thread only.
+ */
+public class AtlasPage extends AbstractTexture {
+
+    private final int size;
+
+    public AtlasPage(int size) {
+        this.size = size;
+        TextureUtil.prepareImage(this.getId(), 0, size, size);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void releaseId() {
+        if (this.id != -1) {
+            RenderTypeCache.evict(this.id);
+        }
+        super.releaseId();
+    }
+
+    @Override
+    public void load(ResourceManager resourceManager) {
+    }
+}
@@ -0,0 +1,23 @@
+package dev.corgitaco.worldviewer.client.tile.atlas;
+
+import dev.corgitaco.worldviewer.client.RenderTypeCache;
+import net.minecraft.client.renderer.RenderStateShard;
+import net.minecraft.client.renderer.RenderType;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The part of a texture a screen tile is drawn from, either a slot of a {@link TileAtlas} page or a whole texture of its own.
+ */
+public record TextureRegion(int id, float minU, float minV, float maxU, float maxV, @Nullable AtlasPage page) {
+
+    public static TextureRegion whole(int id) {
+        return new TextureRegion(id, 0F, 0F, 1F, 1F, null);
+    }
+
+    /**
+     * Tiles of the same atlas page get the same render type, so their quads end up in one buffer and are drawn in one call.
+     */
+    public RenderType renderType(RenderTypeCache renderTypes, RenderStateShard.TransparencyStateShard transparency) {
+        return renderTypes.get(this.id, transparency);
+    }
+}
@@ -0,0 +1,122 @@
+package dev.corgitaco.worldviewer.client.tile.atlas;
+
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Atlas pages shared by the screen tiles of one layer. Slots are allocated and filled on the render thread, they may be freed
+ * from any thread. A page is deleted as soon as its last slot is freed, so zooming out of a busy area does not keep its pages.
+ */
+public class TileAtlas implements AutoCloseable {
+
+    public static final int PAGE_SIZE = 2048;
+    private static final int MIN_SLOT_SIZE = 16;
+
+    private final AtlasAllocator allocator = new AtlasAllocator(PAGE_SIZE, MIN_SLOT_SIZE);
+    private final List<AtlasPage> pages = new ArrayList<>();
+    private int readFramebuffer = -1;
+    private int drawFramebuffer = -1;
+
+    /**
+     * Allocates a slot for a {@code width x width} image and binds its page, the caller uploads to the slot right after.
+     *
+     * @return null if the image is larger than a page.
+     */
+    @Nullable
+    public synchronized Allocation allocate(int width) {
+        RenderSystem.assertOnRenderThread();
+        AtlasAllocator.Slot slot = this.allocator.allocate(width);
+        if (slot == null) {
+            return null;
+        }
+        while (this.pages.size() <= slot.page()) {
+            this.pages.add(null);
+        }
+        AtlasPage page = this.pages.get(slot.page());
+        if (page == null) {
+            page = new AtlasPage(PAGE_SIZE);
+            this.pages.set(slot.page(), page);
+        }
+        page.bind();
+        float minU = slot.x() / (float) PAGE_SIZE;
+        float minV = slot.y() / (float) PAGE_SIZE;
+        TextureRegion region = new TextureRegion(page.getId(), minU, minV, minU + width / (float) PAGE_SIZE, minV + width / (float) PAGE_SIZE, page);
+        return new Allocation(slot, region);
+    }
+
+    /**
+     * Copies {@code width x width} texels from the start of one slot to {@code to} at the given offset with a framebuffer blit, so
+     * the pixels never leave the GPU.
+     */
+    public synchronized void copy(Allocation from, int width, Allocation to, int toOffsetX, int toOffsetY) {
+        RenderSystem.assertOnRenderThread();
+        if (this.readFramebuffer == -1) {
+            this.readFramebuffer = GlStateManager.glGenFramebuffers();
+            this.drawFramebuffer = GlStateManager.glGenFramebuffers();
+        }
+        int previousRead = GlStateManager._getInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
+        int previousDraw = GlStateManager._getInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+
+        GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, this.readFramebuffer);
+        GlStateManager._glFramebufferTexture2D(GL30.GL_READ_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL11.GL_TEXTURE_2D, from.region().id(), 0);
+        GlStateManager._glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, this.drawFramebuffer);
+        GlStateManager._glFramebufferTexture2D(GL30.GL_DRAW_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL11.GL_TEXTURE_2D, to.region().id(), 0);
+
+        int toX = to.x() + toOffsetX;
+        int toY = to.y() + toOffsetY;
+        GlStateManager._glBlitFrameBuffer(from.x(), from.y(), from.x() + width, from.y() + width, toX, toY, toX + width, toY + width, GL11.GL_COLOR_BUFFER_BIT, GL11.GL_NEAREST);
+
+        GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, previousRead);
+        GlStateManager._glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, previousDraw);
+    }
+
+    public synchronized void free(Allocation allocation) {
+        int pageIdx = allocation.slot().page();
+        this.allocator.free(allocation.slot());
+        if (this.allocator.isPageEmpty(pageIdx)) {
+            this.allocator.releasePage(pageIdx);
+            AtlasPage page = this.pages.set(pageIdx, null);
+            if (page != null) {
+                // Defers to the render thread when freed elsewhere.
+                page.releaseId();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (AtlasPage page : this.pages) {
+            if (page != null) {
+                page.releaseId();
+            }
+        }
+        this.pages.clear();
+        if (this.readFramebuffer != -1) {
+            int readFramebuffer = this.readFramebuffer;
+            int drawFramebuffer = this.drawFramebuffer;
+            RenderSystem.recordRenderCall(() -> {
+                GlStateManager._glDeleteFramebuffers(readFramebuffer);
+                GlStateManager._glDeleteFramebuffers(drawFramebuffer);
+            });
+            this.readFramebuffer = -1;
+            this.drawFramebuffer = -1;
+        }
+    }
+
+    public record Allocation(AtlasAllocator.Slot slot, TextureRegion region) {
+
+        public int x() {
+            return this.slot.x();
+        }
+
+        public int y() {
+            return this.slot.y();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package dev.corgitaco.worldviewer.client.tile.metrics;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of non-negative values, recording is lock and allocation free.
+ * <p>
+ * As in HdrHistogram every power of two range is split into {@value #SUB_BUCKETS} linear buckets, so a percentile read back is at most
+ * a sixteenth above the recorded value.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        this.counts.incrementAndGet(index(clamped));
+        this.sum.add(clamped);
+        this.max.accumulate(clamped);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.sum.reset();
+        this.max.reset();
+    }
+
+    public Summary summary() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.counts.get(i);
+            total += counts[i];
+        }
+        long max = this.max.get();
+        if (total == 0) {
+            return new Summary(0, 0, 0, 0, 0, 0);
+        }
+        return new Summary(total, (double) this.sum.sum() / total, percentile(counts, total, 0.5, max), percentile(counts, total, 0.9, max), percentile(counts, total, 0.99, max), max);
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long max) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highestInBucket(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public record Summary(long count, double mean, long p50, long p90, long p99, long max) {
+
+        public JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("count", this.count);
+            json.addProperty("mean", this.mean);
+            json.addProperty("p50", this.p50);
+            json.addProperty("p90", this.p90);
+            json.addProperty("p99", this.p99);
+            json.addProperty("max", this.max);
+            return json;
+        }
+    }
+}
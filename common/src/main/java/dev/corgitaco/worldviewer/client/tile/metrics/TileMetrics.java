@@ -0,0 +1,220 @@
+package dev.corgitaco.worldviewer.client.tile.metrics;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import dev.corgitaco.worldviewer.client.NativeImagePool;
+import dev.corgitaco.worldviewer.client.tile.tilelayer.TileLayer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always on metrics of the tile pipeline per layer, shown by the world screen's debug overlay and dumped to JSON.
+ * <p>
+ * Recording only updates atomics, latencies are kept in microseconds. Gauges owned by a {@code RenderTileManager} are passed in as
+ * {@link Gauges} when reading.
+ */
+public final class TileMetrics {
+
+    public static final int MAX_LOD = 7;
+
+    private static final int LAYERS = TileLayer.FACTORY_REGISTRY.size();
+    private static final Histogram[][] GENERATION = new Histogram[LAYERS][MAX_LOD + 1];
+    private static final Histogram[][] STAGES = new Histogram[LAYERS][Stage.values().length];
+    private static final LongAdder[] DISK_HITS = new LongAdder[LAYERS];
+    private static final LongAdder[] DISK_MISSES = new LongAdder[LAYERS];
+    private static final Histogram UPLOADS_PER_FRAME = new Histogram();
+
+    // Uploads only happen on the render thread.
+    private static int frameUploads;
+    private static int lastFrameUploads;
+
+    static {
+        for (int layerIdx = 0; layerIdx < LAYERS; layerIdx++) {
+            for (int lod = 0; lod <= MAX_LOD; lod++) {
+                GENERATION[layerIdx][lod] = new Histogram();
+            }
+            for (int stage = 0; stage < STAGES[layerIdx].length; stage++) {
+                STAGES[layerIdx][stage] = new Histogram();
+            }
+            DISK_HITS[layerIdx] = new LongAdder();
+            DISK_MISSES[layerIdx] = new LongAdder();
+        }
+    }
+
+    private TileMetrics() {
+    }
+
+    /**
+     * @return how many times {@code sampleResolution} halves before reaching {@code targetSampleResolution}, 0 for the finest LOD.
+     */
+    public static int lod(int sampleResolution, int targetSampleResolution) {
+        return Math.min(MAX_LOD, 31 - Integer.numberOfLeadingZeros(Math.max(1, sampleResolution / targetSampleResolution)));
+    }
+
+    public static void recordGeneration(int layerIdx, int lod, long nanos) {
+        GENERATION[layerIdx][lod].record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public static void recordStage(Stage stage, int layerIdx, long nanos) {
+        STAGES[layerIdx][stage.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * @param hit whether a stored tile was found and decoded.
+     */
+    public static void recordDiskRead(int layerIdx, boolean hit, long nanos) {
+        (hit ? DISK_HITS : DISK_MISSES)[layerIdx].increment();
+        recordStage(Stage.DISK_READ, layerIdx, nanos);
+    }
+
+    public static void recordUpload() {
+        frameUploads++;
+    }
+
+    /**
+     * Called on the render thread once a frame drew every tile.
+     */
+    public static void endFrame() {
+        lastFrameUploads = frameUploads;
+        UPLOADS_PER_FRAME.record(frameUploads);
+        frameUploads = 0;
+    }
+
+    public static void reset() {
+        for (int layerIdx = 0; layerIdx < LAYERS; layerIdx++) {
+            for (Histogram histogram : GENERATION[layerIdx]) {
+                histogram.reset();
+            }
+            for (Histogram histogram : STAGES[layerIdx]) {
+                histogram.reset();
+            }
+            DISK_HITS[layerIdx].reset();
+            DISK_MISSES[layerIdx].reset();
+        }
+        UPLOADS_PER_FRAME.reset();
+    }
+
+    public static JsonObject toJson(Gauges gauges) {
+        JsonObject json = new JsonObject();
+        JsonObject uploads = new JsonObject();
+        uploads.addProperty("last_frame", lastFrameUploads);
+        uploads.add("per_frame", UPLOADS_PER_FRAME.summary().toJson());
+        json.add("texture_uploads", uploads);
+
+        JsonObject nativeMemory = new JsonObject();
+        nativeMemory.addProperty("held_bytes", NativeImagePool.nativeBytes());
+        nativeMemory.addProperty("pooled_bytes", NativeImagePool.pooledBytes());
+        json.add("native_images", nativeMemory);
+
+        json.add("data_tile_cache", ratioJson(gauges.dataTileHits(), gauges.dataTileMisses()));
+        json.addProperty("queued_tiles", gauges.queuedTiles());
+
+        JsonObject layers = new JsonObject();
+        for (int layerIdx = 0; layerIdx < LAYERS; layerIdx++) {
+            JsonObject layer = new JsonObject();
+            layer.addProperty("pending_jobs", gauges.pendingJobs()[layerIdx]);
+
+            JsonObject disk = ratioJson(DISK_HITS[layerIdx].sum(), DISK_MISSES[layerIdx].sum());
+            disk.add("read_us", stage(Stage.DISK_READ, layerIdx).toJson());
+            layer.add("disk", disk);
+
+            JsonObject generation = new JsonObject();
+            for (int lod = 0; lod <= MAX_LOD; lod++) {
+                Histogram.Summary summary = GENERATION[layerIdx][lod].summary();
+                if (summary.count() > 0) {
+                    generation.add("lod_" + lod, summary.toJson());
+                }
+            }
+            layer.add("generation_us", generation);
+            layer.add("process_futures_us", stage(Stage.PROCESS_FUTURES, layerIdx).toJson());
+            layer.add("scale_up_us", stage(Stage.SCALE_UP, layerIdx).toJson());
+            layers.add(TileLayer.FACTORY_REGISTRY.get(layerIdx).name(), layer);
+        }
+        json.add("layers", layers);
+        return json;
+    }
+
+    /**
+     * @return the lines of the debug overlay, a summary followed by two lines per layer.
+     */
+    public static List<String> overlay(Gauges gauges) {
+        List<String> lines = new ArrayList<>();
+        Histogram.Summary uploads = UPLOADS_PER_FRAME.summary();
+        lines.add("Texture uploads: %s last frame, p99 %s, max %s".formatted(lastFrameUploads, uploads.p99(), uploads.max()));
+        lines.add("Native images: %s held, %s pooled".formatted(mebibytes(NativeImagePool.nativeBytes()), mebibytes(NativeImagePool.pooledBytes())));
+        lines.add("Data tile cache: %s of %s".formatted(percent(gauges.dataTileHits(), gauges.dataTileMisses()), gauges.dataTileHits() + gauges.dataTileMisses()));
+        lines.add("Queued tiles: %s".formatted(gauges.queuedTiles()));
+        for (int layerIdx = 0; layerIdx < LAYERS; layerIdx++) {
+            long hits = DISK_HITS[layerIdx].sum();
+            long misses = DISK_MISSES[layerIdx].sum();
+            lines.add("%s: %s pending, disk %s of %s, futures p99 %s, scale up p99 %s".formatted(TileLayer.FACTORY_REGISTRY.get(layerIdx).name(), gauges.pendingJobs()[layerIdx],
+                    percent(hits, misses), hits + misses, millis(stage(Stage.PROCESS_FUTURES, layerIdx).p99()), millis(stage(Stage.SCALE_UP, layerIdx).p99())));
+
+            StringBuilder generation = new StringBuilder("  generation p50/p99:");
+            for (int lod = MAX_LOD; lod >= 0; lod--) {
+                Histogram.Summary summary = GENERATION[layerIdx][lod].summary();
+                if (summary.count() > 0) {
+                    generation.append(" LOD %s %s/%s".formatted(lod, millis(summary.p50()), millis(summary.p99())));
+                }
+            }
+            lines.add(generation.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Writes {@link #toJson} to a new timestamped file in {@code directory}.
+     */
+    public static Path dump(Gauges gauges, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve("tile-metrics-%s.json".formatted(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH.mm.ss"))));
+        Files.writeString(file, new GsonBuilder().setPrettyPrinting().create().toJson(toJson(gauges)));
+        return file;
+    }
+
+    private static Histogram.Summary stage(Stage stage, int layerIdx) {
+        return STAGES[layerIdx][stage.ordinal()].summary();
+    }
+
+    private static JsonObject ratioJson(long hits, long misses) {
+        JsonObject json = new JsonObject();
+        json.addProperty("hits", hits);
+        json.addProperty("misses", misses);
+        json.addProperty("hit_rate", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+        return json;
+    }
+
+    private static String percent(long hits, long misses) {
+        return hits + misses > 0 ? String.format(Locale.ROOT, "%.1f%%", 100.0 * hits / (hits + misses)) : "-";
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.1fms", micros / 1000.0);
+    }
+
+    private static String mebibytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f MiB", bytes / (double) (1 << 20));
+    }
+
+    public enum Stage {
+        DISK_READ,
+        PROCESS_FUTURES,
+        SCALE_UP
+    }
+
+    /**
+     * @param pendingJobs unfinished tile jobs per layer.
+     * @param queuedTiles tiles waiting to be submitted at all.
+     */
+    public record Gauges(int[] pendingJobs, int queuedTiles, long dataTileHits, long dataTileMisses) {
+    }
+}
@@ -0,0 +1,133 @@
+package dev.corgitaco.worldviewer.client.tile.storage;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.mojang.blaze3d.platform.NativeImage;
+import dev.corgitaco.worldviewer.client.NativeImagePool;
+import dev.corgitaco.worldviewer.mixin.NativeImageAccessor;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A tile layer's persisted form: raw RGBA pixels followed by the layer's NBT data.
+ * <p>
+ * Layout: {@code byte version, int width, int height, width * height * 4 pixel bytes, int nbtLength, nbt}. A width of 0 means the
+ * layer has no image.
+ */
+public record TilePayload(@Nullable NativeImage image, CompoundTag data) {
+
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = Byte.BYTES + Integer.BYTES * 2;
+
+    /**
+     * Copies the image pixels and serializes the data, the image may be closed as soon as this returns.
+     */
+    public static byte[] encode(@Nullable NativeImage image, CompoundTag data) throws IOException {
+        return encode(image, 1, data);
+    }
+
+    /**
+     * @param pixelScale how many pixels wide every pixel of {@code image} is stored, an image holding every {@code pixelScale}th
+     *                   pixel is persisted as if it held all of them.
+     */
+    public static byte[] encode(@Nullable NativeImage image, int pixelScale, CompoundTag data) throws IOException {
+        ByteArrayDataOutput nbtOutput = ByteStreams.newDataOutput();
+        NbtIo.write(data, nbtOutput);
+        byte[] nbt = nbtOutput.toByteArray();
+
+        int width = 0;
+        int height = 0;
+        long pixels = 0L;
+        if (image != null) {
+            if (image.format() != NativeImage.Format.RGBA) {
+                throw new IllegalArgumentException("Only RGBA tile images can be persisted, got " + image.format());
+            }
+            pixels = ((NativeImageAccessor) (Object) image).wvGetPixels();
+            if (pixels == 0L) {
+                throw new IllegalStateException("Image is not allocated.");
+            }
+            width = Math.multiplyExact(image.getWidth(), pixelScale);
+            height = Math.multiplyExact(image.getHeight(), pixelScale);
+        }
+
+        int pixelBytes = Math.multiplyExact(Math.multiplyExact(width, height), 4);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + pixelBytes + Integer.BYTES + nbt.length);
+        buffer.put(VERSION).putInt(width).putInt(height);
+        if (pixelBytes > 0 && pixelScale == 1) {
+            buffer.put(MemoryUtil.memByteBuffer(pixels, pixelBytes));
+        } else if (pixelBytes > 0) {
+            // Pixels are written in memory order, as decode copies them back verbatim.
+            ByteBuffer row = ByteBuffer.allocate(width * 4).order(ByteOrder.nativeOrder());
+            int imageWidth = image.getWidth();
+            for (int z = 0; z < image.getHeight(); z++) {
+                row.clear();
+                for (int x = 0; x < imageWidth; x++) {
+                    int abgr = MemoryUtil.memGetInt(pixels + ((long) z * imageWidth + x) * 4);
+                    for (int i = 0; i < pixelScale; i++) {
+                        row.putInt(abgr);
+                    }
+                }
+                for (int i = 0; i < pixelScale; i++) {
+                    buffer.put(row.array(), 0, row.capacity());
+                }
+            }
+        }
+        buffer.putInt(nbt.length).put(nbt);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a payload, copying pixels straight into a freshly allocated {@link NativeImage} without any PNG decoding.
+     *
+     * @param tileSize the size in blocks of the tile the payload was stored for, a square image covering it with whole blocks per
+     *                 pixel is the only one accepted.
+     */
+    public static TilePayload decode(ByteBuffer buffer, int tileSize) throws IOException {
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unknown tile payload version " + version);
+        }
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        long pixelBytes = (long) width * height * 4;
+        boolean validImage = width == 0 && height == 0 || width > 0 && width == height && width <= tileSize && tileSize % width == 0;
+        if (!validImage || pixelBytes > buffer.remaining()) {
+            throw new IOException("Corrupt tile payload of size %sx%s for a tile of %s blocks".formatted(width, height, tileSize));
+        }
+
+        NativeImage image = null;
+        if (pixelBytes > 0) {
+            // Bounded by the remaining bytes above, so it fits an int.
+            int byteCount = (int) pixelBytes;
+            image = NativeImagePool.acquire(width, height, false);
+            long pixels = ((NativeImageAccessor) (Object) image).wvGetPixels();
+            if (buffer.isDirect()) {
+                MemoryUtil.memCopy(MemoryUtil.memAddress(buffer), pixels, byteCount);
+            } else {
+                MemoryUtil.memByteBuffer(pixels, byteCount).put(buffer.slice(buffer.position(), byteCount));
+            }
+            buffer.position(buffer.position() + byteCount);
+        }
+
+        try {
+            int nbtLength = buffer.getInt();
+            if (nbtLength < 0 || nbtLength > buffer.remaining()) {
+                throw new IOException("Corrupt tile payload data of %s bytes".formatted(nbtLength));
+            }
+            byte[] nbt = new byte[nbtLength];
+            buffer.get(nbt);
+            return new TilePayload(image, NbtIo.read(ByteStreams.newDataInput(nbt)));
+        } catch (IOException | RuntimeException e) {
+            if (image != null) {
+                NativeImagePool.release(image);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package dev.corgitaco.worldviewer.client.tile.storage;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Holds {@link #REGION_TILES} x {@link #REGION_TILES} tile payloads in a single file, laid out like vanilla's region files.
+ * <p>
+ * The file starts with a memory mapped offset table of one {@code (int sector, int byteLength)} entry per tile, payloads follow in
+ * {@link #SECTOR_BYTES} sized sectors. Freed sectors are tracked in a bitmap and reused first fit.
+ * <p>
+ * A payload is never written over the sectors of the one it replaces. It goes to free sectors, then its entry is updated, and
+ * the old sectors only become free again once {@link #flush} made the new entry durable. A crash at any point therefore leaves
+ * each entry on disk pointing at either the old or the new payload, never at a torn one.
+ */
+public class TileRegionFile implements AutoCloseable {
+
+    public static final int REGION_SHIFT = 5;
+    public static final int REGION_TILES = 1 << REGION_SHIFT;
+    private static final int ENTRIES = REGION_TILES * REGION_TILES;
+
+    private static final int SECTOR_BYTES = 4096;
+    private static final int HEADER_BYTES = ENTRIES * Integer.BYTES * 2;
+    private static final int HEADER_SECTORS = HEADER_BYTES / SECTOR_BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final IntBuffer entries;
+    private final BitSet usedSectors = new BitSet();
+    // Sectors of replaced payloads, still in use until the offset table no longer pointing at them is flushed.
+    private final BitSet releasedSectors = new BitSet();
+    private boolean closed;
+
+    public TileRegionFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        this.entries = this.header.asIntBuffer();
+
+        this.usedSectors.set(0, HEADER_SECTORS);
+        long fileBytes = this.channel.size();
+        for (int i = 0; i < ENTRIES; i++) {
+            int sectors = sectorCount(byteLengthOf(i));
+            if (sectors == 0) {
+                continue;
+            }
+            int sector = sectorOf(i);
+            // The last payload of the file is not padded to a whole sector.
+            if (sector < HEADER_SECTORS || (long) sector * SECTOR_BYTES + byteLengthOf(i) > fileBytes) {
+                // Truncated or otherwise broken entry, treat the tile as missing.
+                setEntry(i, 0, 0);
+                continue;
+            }
+            this.usedSectors.set(sector, sector + sectors);
+        }
+    }
+
+    public static int localIndex(int tileX, int tileZ) {
+        return (tileX & (REGION_TILES - 1)) + (tileZ & (REGION_TILES - 1)) * REGION_TILES;
+    }
+
+    /**
+     * @return a copy of the tile's payload, or null if the tile has not been written. The copy is taken under this file's lock,
+     * a later {@link #write} may reuse the sectors it came from once they were freed.
+     */
+    @Nullable
+    public synchronized ByteBuffer read(int localIndex) throws IOException {
+        ensureOpen();
+        int length = byteLengthOf(localIndex);
+        if (length <= 0) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = (long) sectorOf(localIndex) * SECTOR_BYTES;
+        while (buffer.hasRemaining()) {
+            int read = this.channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Tile payload in %s ends past the end of the file.".formatted(this.path));
+            }
+        }
+        return buffer.flip();
+    }
+
+    public synchronized boolean contains(int localIndex) {
+        return byteLengthOf(localIndex) > 0;
+    }
+
+    public synchronized void write(int localIndex, byte[] payload) throws IOException {
+        ensureOpen();
+        int oldSector = sectorOf(localIndex);
+        int oldSectors = sectorCount(byteLengthOf(localIndex));
+        int sectors = sectorCount(payload.length);
+        int sector = allocate(sectors);
+
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        long position = (long) sector * SECTOR_BYTES;
+        while (buffer.hasRemaining()) {
+            position += this.channel.write(buffer, position);
+        }
+        this.usedSectors.set(sector, sector + sectors);
+        setEntry(localIndex, sector, payload.length);
+        if (oldSectors > 0) {
+            this.releasedSectors.set(oldSector, oldSector + oldSectors);
+        }
+    }
+
+    /**
+     * Forces payloads, then the offset table, to disk and frees the sectors of the payloads they replaced.
+     */
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        this.channel.force(false);
+        this.header.force();
+        this.usedSectors.andNot(this.releasedSectors);
+        this.releasedSectors.clear();
+    }
+
+    public Path path() {
+        return this.path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            this.closed = true;
+            this.channel.close();
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (this.closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private int allocate(int sectors) {
+        int start = this.usedSectors.nextClearBit(HEADER_SECTORS);
+        while (true) {
+            int end = this.usedSectors.nextSetBit(start);
+            if (end == -1 || end - start >= sectors) {
+                return start;
+            }
+            start = this.usedSectors.nextClearBit(end);
+        }
+    }
+
+    private int sectorOf(int localIndex) {
+        return this.entries.get(localIndex << 1);
+    }
+
+    private int byteLengthOf(int localIndex) {
+        return this.entries.get((localIndex << 1) + 1);
+    }
+
+    private void setEntry(int localIndex, int sector, int byteLength) {
+        this.entries.put(localIndex << 1, sector);
+        this.entries.put((localIndex << 1) + 1, byteLength);
+    }
+
+    private static int sectorCount(int byteLength) {
+        return byteLength <= 0 ? 0 : (byteLength + SECTOR_BYTES - 1) / SECTOR_BYTES;
+    }
+}
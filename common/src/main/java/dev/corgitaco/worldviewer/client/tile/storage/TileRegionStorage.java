@@ -0,0 +1,246 @@
+package dev.corgitaco.worldviewer.client.tile.storage;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persists one tile layer's payloads for every tile size into {@link TileRegionFile}s under {@code <directory>/s.<tileSize>/r.<x>.<z>.wvr}.
+ * <p>
+ * Payloads handed to {@link #publish} are readable from memory until they have reached their region file, so a read issued
+ * after a write always observes it without waiting on the disk. Region files synchronize on themselves, different regions are
+ * read and written concurrently.
+ * <p>
+ * Storages are shared per directory and region files per path, a region file with two open instances would have both hand out
+ * the same free sectors. At most {@link #MAX_OPEN_REGIONS} region files are kept open across all storages, least recently used
+ * ones are closed first. Region files are opened and closed outside the table's lock.
+ */
+public class TileRegionStorage {
+
+    private static final int MAX_OPEN_REGIONS = 64;
+
+    private static final Map<Path, TileRegionStorage> STORAGES = new ConcurrentHashMap<>();
+    // Guards both tables and is never held during disk access.
+    private static final Object2ObjectLinkedOpenHashMap<Path, CompletableFuture<TileRegionFile>> OPEN_REGIONS = new Object2ObjectLinkedOpenHashMap<>();
+    // Regions taken out of OPEN_REGIONS whose close has not finished yet.
+    private static final Map<Path, CompletableFuture<Void>> CLOSING_REGIONS = new HashMap<>();
+
+    private final Path directory;
+    private final ConcurrentHashMap<TileKey, byte[]> inFlightWrites = new ConcurrentHashMap<>();
+
+    private TileRegionStorage(Path directory) {
+        this.directory = directory;
+    }
+
+    public static TileRegionStorage of(Path directory) {
+        return STORAGES.computeIfAbsent(directory.toAbsolutePath().normalize(), TileRegionStorage::new);
+    }
+
+    @Nullable
+    public TilePayload read(int tileX, int tileZ, int tileSize) throws IOException {
+        byte[] inFlight = this.inFlightWrites.get(new TileKey(tileSize, tileX, tileZ));
+        if (inFlight != null) {
+            return TilePayload.decode(ByteBuffer.wrap(inFlight), tileSize);
+        }
+
+        while (true) {
+            TileRegionFile regionFile = getRegionFile(tileX, tileZ, tileSize, false);
+            if (regionFile == null) {
+                return null;
+            }
+            ByteBuffer buffer;
+            try {
+                buffer = regionFile.read(TileRegionFile.localIndex(tileX, tileZ));
+            } catch (ClosedChannelException e) {
+                // Evicted by another thread between lookup and read, reopen it.
+                continue;
+            }
+            return buffer == null ? null : TilePayload.decode(buffer, tileSize);
+        }
+    }
+
+    /**
+     * Makes the payload visible to {@link #read} until {@link #retire} is called with it, i.e. until it has been written.
+     */
+    public void publish(int tileX, int tileZ, int tileSize, byte[] payload) {
+        this.inFlightWrites.put(new TileKey(tileSize, tileX, tileZ), payload);
+    }
+
+    /**
+     * Drops the in-memory payload unless a newer one has been published for the same tile since.
+     */
+    public void retire(int tileX, int tileZ, int tileSize, byte[] payload) {
+        this.inFlightWrites.remove(new TileKey(tileSize, tileX, tileZ), payload);
+    }
+
+    /**
+     * @return the region file the payload was written to, for the caller to {@link TileRegionFile#flush} once done writing.
+     */
+    public TileRegionFile write(int tileX, int tileZ, int tileSize, byte[] payload) throws IOException {
+        while (true) {
+            TileRegionFile regionFile = getRegionFile(tileX, tileZ, tileSize, true);
+            try {
+                regionFile.write(TileRegionFile.localIndex(tileX, tileZ), payload);
+                return regionFile;
+            } catch (ClosedChannelException e) {
+                // Evicted by another thread between lookup and write, reopen it.
+            }
+        }
+    }
+
+    /**
+     * Closes this storage's open region files, the storage stays usable and reopens them on the next access.
+     */
+    public void closeRegions() throws IOException {
+        Map<Path, CompletableFuture<TileRegionFile>> removed = new HashMap<>();
+        synchronized (OPEN_REGIONS) {
+            Iterator<Map.Entry<Path, CompletableFuture<TileRegionFile>>> iterator = OPEN_REGIONS.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, CompletableFuture<TileRegionFile>> entry = iterator.next();
+                Path path = entry.getKey();
+                if (!path.startsWith(this.directory)) {
+                    continue;
+                }
+                // Read before removing, the map's entries are only views of its current slots.
+                removed.put(path, entry.getValue());
+                iterator.remove();
+                CLOSING_REGIONS.put(path, new CompletableFuture<>());
+            }
+        }
+
+        IOException exception = null;
+        for (Map.Entry<Path, CompletableFuture<TileRegionFile>> entry : removed.entrySet()) {
+            try {
+                closeRemoved(entry.getKey(), entry.getValue());
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Opens the region file outside the table's lock, so disk access to one region never waits on another region being opened or
+     * closed. Threads asking for a region that is being opened wait for that open, a region that is being closed is only reopened
+     * once its last write has landed.
+     */
+    @Nullable
+    private TileRegionFile getRegionFile(int tileX, int tileZ, int tileSize, boolean create) throws IOException {
+        Path path = this.directory.resolve("s." + tileSize).resolve("r." + (tileX >> TileRegionFile.REGION_SHIFT) + "." + (tileZ >> TileRegionFile.REGION_SHIFT) + ".wvr");
+        boolean exists = create;
+        while (true) {
+            CompletableFuture<TileRegionFile> opening;
+            CompletableFuture<Void> closing = null;
+            boolean opener = false;
+            Path evictedPath = null;
+            CompletableFuture<TileRegionFile> evicted = null;
+            synchronized (OPEN_REGIONS) {
+                opening = OPEN_REGIONS.getAndMoveToFirst(path);
+                if (opening == null) {
+                    closing = CLOSING_REGIONS.get(path);
+                    if (closing == null && exists) {
+                        opening = new CompletableFuture<>();
+                        OPEN_REGIONS.putAndMoveToFirst(path, opening);
+                        opener = true;
+                        if (OPEN_REGIONS.size() > MAX_OPEN_REGIONS) {
+                            evictedPath = OPEN_REGIONS.lastKey();
+                            evicted = OPEN_REGIONS.removeLast();
+                            CLOSING_REGIONS.put(evictedPath, new CompletableFuture<>());
+                        }
+                    }
+                }
+            }
+
+            if (opener) {
+                try {
+                    return open(path, opening);
+                } finally {
+                    if (evicted != null) {
+                        // Threads still holding the evicted instance see it closed and look it up again.
+                        try {
+                            closeRemoved(evictedPath, evicted);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+            if (opening != null) {
+                return await(path, opening);
+            }
+            if (closing != null) {
+                closing.join();
+                continue;
+            }
+            if (!Files.exists(path)) {
+                return null;
+            }
+            exists = true;
+        }
+    }
+
+    private static TileRegionFile open(Path path, CompletableFuture<TileRegionFile> opening) throws IOException {
+        try {
+            Files.createDirectories(path.getParent());
+            TileRegionFile regionFile = new TileRegionFile(path);
+            opening.complete(regionFile);
+            return regionFile;
+        } catch (IOException | RuntimeException e) {
+            synchronized (OPEN_REGIONS) {
+                OPEN_REGIONS.remove(path, opening);
+            }
+            opening.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static TileRegionFile await(Path path, CompletableFuture<TileRegionFile> opening) throws IOException {
+        try {
+            return opening.join();
+        } catch (CompletionException e) {
+            throw new IOException("Failed to open region file %s".formatted(path), e.getCause());
+        }
+    }
+
+    /**
+     * Closes a region file already taken out of the table, once it finished opening, then lets the path be opened again.
+     */
+    private static void closeRemoved(Path path, CompletableFuture<TileRegionFile> opening) throws IOException {
+        try {
+            TileRegionFile regionFile;
+            try {
+                regionFile = opening.join();
+            } catch (CompletionException e) {
+                // Never opened, nothing to close.
+                return;
+            }
+            regionFile.close();
+        } finally {
+            CompletableFuture<Void> closing;
+            synchronized (OPEN_REGIONS) {
+                closing = CLOSING_REGIONS.remove(path);
+            }
+            closing.complete(null);
+        }
+    }
+
+    private record TileKey(int tileSize, int tileX, int tileZ) {
+    }
+}
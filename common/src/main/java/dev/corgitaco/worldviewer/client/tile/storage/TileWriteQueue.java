@@ -0,0 +1,162 @@
+package dev.corgitaco.worldviewer.client.tile.storage;
+
+import dev.corgitaco.worldviewer.client.tile.RenderTileManager;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind queue for tile payloads shared by every layer's {@link TileRegionStorage}.
+ * <p>
+ * Pending writes are keyed by (storage, tile), queueing a tile that is still pending replaces its payload in place so only the
+ * newest LOD reaches the disk. A single writer thread drains up to {@link #BATCH_SIZE} payloads at a time and flushes the region
+ * files written by the batch once it is done, other open regions are left alone. When {@code capacity} distinct tiles are pending, {@link #enqueue} blocks the generating thread
+ * until the writer catches up.
+ */
+public class TileWriteQueue {
+
+    private static final int BATCH_SIZE = 64;
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final Condition notFull = this.lock.newCondition();
+    private final LinkedHashMap<PendingKey, byte[]> pending = new LinkedHashMap<>();
+    private final List<TileRegionStorage> pendingCloses = new ArrayList<>();
+
+    public TileWriteQueue(int capacity, String name) {
+        this.capacity = capacity;
+        RenderTileManager.namedThreadFactory(name).newThread(this::run).start();
+    }
+
+    public void enqueue(TileRegionStorage storage, int tileX, int tileZ, int tileSize, byte[] payload) throws InterruptedException {
+        PendingKey key = new PendingKey(storage, tileSize, tileX, tileZ);
+        this.lock.lockInterruptibly();
+        try {
+            if (!this.pending.containsKey(key)) {
+                while (this.pending.size() >= this.capacity) {
+                    this.notFull.await();
+                }
+            }
+            storage.publish(tileX, tileZ, tileSize, payload);
+            this.pending.put(key, payload);
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the storage's region files on the writer thread once every payload queued for it has been written.
+     */
+    public void closeRegionsWhenDrained(TileRegionStorage storage) {
+        this.lock.lock();
+        try {
+            this.pendingCloses.add(storage);
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.pending.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void run() {
+        List<Map.Entry<PendingKey, byte[]>> batch = new ArrayList<>(BATCH_SIZE);
+        Set<TileRegionFile> touched = new ReferenceOpenHashSet<>();
+        List<TileRegionStorage> toClose = new ArrayList<>();
+
+        while (true) {
+            this.lock.lock();
+            try {
+                while (this.pending.isEmpty() && this.pendingCloses.isEmpty()) {
+                    this.notEmpty.await();
+                }
+
+                Iterator<Map.Entry<PendingKey, byte[]>> iterator = this.pending.entrySet().iterator();
+                while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+                    Map.Entry<PendingKey, byte[]> entry = iterator.next();
+                    batch.add(Map.entry(entry.getKey(), entry.getValue()));
+                    iterator.remove();
+                }
+                this.notFull.signalAll();
+
+                Iterator<TileRegionStorage> closes = this.pendingCloses.iterator();
+                while (closes.hasNext()) {
+                    TileRegionStorage storage = closes.next();
+                    // Anything of it in this batch is written before its regions get closed below.
+                    if (!hasPendingWrites(storage)) {
+                        toClose.add(storage);
+                        closes.remove();
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                this.lock.unlock();
+            }
+
+            for (Map.Entry<PendingKey, byte[]> entry : batch) {
+                PendingKey key = entry.getKey();
+                TileRegionStorage storage = key.storage();
+                try {
+                    touched.add(storage.write(key.tileX(), key.tileZ(), key.tileSize(), entry.getValue()));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    storage.retire(key.tileX(), key.tileZ(), key.tileSize(), entry.getValue());
+                }
+            }
+
+            for (TileRegionFile regionFile : touched) {
+                try {
+                    regionFile.flush();
+                } catch (ClosedChannelException ignored) {
+                    // Evicted since it was written, closing it flushed it already.
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            for (TileRegionStorage storage : toClose) {
+                try {
+                    storage.closeRegions();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            batch.clear();
+            touched.clear();
+            toClose.clear();
+        }
+    }
+
+    private boolean hasPendingWrites(TileRegionStorage storage) {
+        for (PendingKey key : this.pending.keySet()) {
+            if (key.storage() == storage) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record PendingKey(TileRegionStorage storage, int tileSize, int tileX, int tileZ) {
+    }
+}
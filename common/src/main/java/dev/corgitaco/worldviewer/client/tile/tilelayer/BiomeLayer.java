@@ -2,7 +2,6 @@ package dev.corgitaco.worldviewer.client.tile.tilelayer;
 
 import com.mojang.blaze3d.platform.NativeImage;
 import com.mojang.blaze3d.vertex.VertexConsumer;
-import dev.corgitaco.worldviewer.client.ClientUtil;
 import dev.corgitaco.worldviewer.client.WVRenderType;
 import dev.corgitaco.worldviewer.common.storage.DataTileManager;
 import dev.corgitaco.worldviewer.common.storage.OptimizedBiomeStorage;
@@ -15,7 +14,6 @@ import net.minecraft.core.BlockPos;
 import net.minecraft.core.Holder;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.NbtIo;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.Style;
 import net.minecraft.resources.ResourceKey;
@@ -27,58 +25,45 @@ import net.minecraft.world.level.biome.Biomes;
 import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4f;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
-public class BiomeLayer extends TileLayer {
-
-    @Nullable
-    private final NativeImage image;
+public class BiomeLayer extends ProgressiveTileLayer {
 
     @Nullable
     private final OptimizedBiomeStorage biomesData;
 
 
-    public BiomeLayer(DataTileManager tileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, LongSet sampledChunks, @Nullable BiomeLayer lowerResolution) {
+    public BiomeLayer(DataTileManager tileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, int targetSampleResolution, LongSet sampledChunks, @Nullable BiomeLayer lowerResolution) {
         super(tileManager, y, tileWorldX, tileWorldZ, size, sampleResolution, sampledChunks, lowerResolution);
         int sampledSize = size / sampleResolution;
+        ProgressiveSampleGrid grid = beginPass(lowerResolution, size, sampleResolution, targetSampleResolution);
+        int step = grid.step(sampleResolution);
+        int coarseStep = grid.completedStep();
+        boolean inPlace = isInPlace(grid, lowerResolution);
 
-        OptimizedBiomeStorage data = new OptimizedBiomeStorage(sampledSize);
-
-        if (lowerResolution != null) {
-
-            int previousSampledSize = size / lowerResolution.sampleResolution;
-
-            int scale = sampledSize / previousSampledSize;
-            for (int sampleX = 0; sampleX < previousSampledSize; sampleX++) {
-                for (int sampleZ = 0; sampleZ < previousSampledSize; sampleZ++) {
-                    int scaledX = sampleX * scale;
-                    int scaledZ = sampleZ * scale;
-                    @Nullable
-                    Holder<Biome> biomeRaw = lowerResolution.biomesData.getBiomeRaw(sampleX, sampleZ);
-                    if (biomeRaw != null) {
-                        data.getBiome(scaledX, scaledZ, 0, 0, ((worldX1, worldZ1) -> biomeRaw));
-                    }
-                }
-            }
-        }
-
+        OptimizedBiomeStorage data = coarseStep != 0 ? lowerResolution.biomesData : new OptimizedBiomeStorage(grid.width());
 
-        NativeImage image = ClientUtil.createImage(sampledSize, sampledSize, true);
         BlockPos.MutableBlockPos worldPos = new BlockPos.MutableBlockPos();
         for (int sampleX = 0; sampleX < sampledSize; sampleX++) {
             for (int sampleZ = 0; sampleZ < sampledSize; sampleZ++) {
-                if (Thread.currentThread().isInterrupted()) {
+                if (isGenerationCancelled()) {
                     this.biomesData = null;
-                    this.image = null;
-                    image.close();
+                    abandonPass(grid);
                     return;
                 }
+                int dataX = sampleX * step;
+                int dataZ = sampleZ * step;
+                if (!ProgressiveSampleGrid.isNewSample(dataX, dataZ, coarseStep)) {
+                    if (!inPlace) {
+                        Holder<Biome> biomeRaw = data.getBiomeRaw(dataX, dataZ);
+                        if (biomeRaw != null) {
+                            grid.fill(dataX, dataZ, step, color(biomeRaw));
+                        }
+                    }
+                    continue;
+                }
                 int worldX = tileWorldX + (sampleX * sampleResolution);
                 int worldZ = tileWorldZ + (sampleZ * sampleResolution);
                 worldPos.set(worldX, y, worldZ);
@@ -86,94 +71,75 @@ public class BiomeLayer extends TileLayer {
                 sampledChunks.add(ChunkPos.asLong(worldPos));
                 Holder<Biome> biomeHolder = tileManager.getBiome(worldX, worldZ);
 
-                int dataX = sampleX;
-                int dataZ = sampleZ;
-                ResourceKey<Biome> biome = biomeHolder.unwrapKey().orElseThrow();
-
                 data.getBiome(dataX, dataZ, worldX, worldZ, (worldX1, worldZ1) -> biomeHolder);
 
-                image.setPixelRGBA(dataX, dataZ, _ARGBToABGR(FAST_COLORS.computeIfAbsent(biome, biomeResourceKey -> {
-                    Biome value = biomeHolder.value();
-                    float baseTemperature = value.getBaseTemperature();
-                    float lerp = Mth.inverseLerp(baseTemperature, -2, 2);
-                    int r = (int) Mth.clampedLerp(137, 139, lerp);
-                    int g = (int) Mth.clampedLerp(207, 0, lerp);
-                    int b = (int) Mth.clampedLerp(240, 0, lerp);
-
-                    return FastColor.ARGB32.color(255, r, g, b);
-                })));
+                grid.fill(dataX, dataZ, step, color(biomeHolder));
 
             }
         }
-        this.image = image;
         this.biomesData = data;
+        finishPass(grid, step);
     }
 
-    public BiomeLayer(int size, Path imagePath, Path dataPath, int sampleResolution) throws Exception {
-        super(size, imagePath, dataPath, sampleResolution);
-        File dataPathFile = dataPath.toFile();
-        File imagePathFile = imagePath.toFile();
-        if (dataPathFile.exists() && imagePathFile.exists()) {
-            while (!imagePathFile.canRead() || !dataPathFile.canRead()) {
-                Thread.sleep(1);
-            }
-
-            try {
-                CompoundTag compoundTag = NbtIo.read(dataPathFile);
-                this.biomesData = new OptimizedBiomeStorage(compoundTag.getCompound("biomes"), Minecraft.getInstance().level.registryAccess().registryOrThrow(Registries.BIOME));
-                this.sampleResolution = compoundTag.getInt("res");
-                this.image = NativeImage.read(Files.readAllBytes(imagePath));
-                if (this.image.getWidth() != (size / this.sampleResolution)) {
-                    throw new IllegalArgumentException("Improper image width.");
-                }
-            } catch (IOException e) {
-                throw e;
-            }
+    public BiomeLayer(int size, @Nullable NativeImage image, CompoundTag data, int sampleResolution) {
+        super(size, image, data, sampleResolution);
+        this.biomesData = new OptimizedBiomeStorage(data.getCompound("biomes"), Minecraft.getInstance().level.registryAccess().registryOrThrow(Registries.BIOME));
+        this.sampleResolution = data.getInt("res");
+        this.grid = ProgressiveSampleGrid.fromDisk(this, image, size, this.sampleResolution);
+    }
 
-        } else {
-            this.biomesData = null;
-            this.sampleResolution = Integer.MIN_VALUE;
-            this.image = null;
-        }
+    private static int color(Holder<Biome> biomeHolder) {
+        ResourceKey<Biome> biome = biomeHolder.unwrapKey().orElseThrow();
+        return _ARGBToABGR(FAST_COLORS.computeIfAbsent(biome, biomeResourceKey -> {
+            Biome value = biomeHolder.value();
+            float baseTemperature = value.getBaseTemperature();
+            float lerp = Mth.inverseLerp(baseTemperature, -2, 2);
+            int r = (int) Mth.clampedLerp(137, 139, lerp);
+            int g = (int) Mth.clampedLerp(207, 0, lerp);
+            int b = (int) Mth.clampedLerp(240, 0, lerp);
+
+            return FastColor.ARGB32.color(255, r, g, b);
+        }));
     }
 
     @Override
     public Renderer renderer() {
-        return (graphics, size1, id, opacity, renderTileContext) -> {
+        return (graphics, size1, texture, opacity, renderTileContext) -> {
             Matrix4f matrix = graphics.pose().last().pose();
             Map<String, ?> data = renderTileContext.data();
             if (data.get("highlighted_biome") instanceof ResourceKey biomeResourceKey) {
                 if (FAST_COLORS.containsKey(biomeResourceKey)) {
                     int color = FAST_COLORS.getInt(biomeResourceKey);
-                    VertexConsumer vertexConsumer = graphics.bufferSource().getBuffer(WVRenderType.COLOR_FILTER_WORLD_VIEWER_GUI.apply(id, RenderType.NO_TRANSPARENCY));
+                    VertexConsumer vertexConsumer = graphics.bufferSource().getBuffer(texture.renderType(WVRenderType.COLOR_FILTER_WORLD_VIEWER_GUI, RenderType.NO_TRANSPARENCY));
                     float a = FastColor.ARGB32.alpha(color) / 255F;
 
                     float r = FastColor.ARGB32.red(color) / 255F;
                     float g = FastColor.ARGB32.green(color) / 255F;
                     float b = FastColor.ARGB32.blue(color) / 255F;
 
-                    vertexConsumer.vertex(matrix, (float) 0, (float) size1, (float) 0).color(1F, 1F, 1F, opacity).uv(0, 1).color(r, g, b, a).endVertex();
-                    vertexConsumer.vertex(matrix, (float) size1, (float) size1, (float) 0).color(1F, 1F, 1F, opacity).uv(1, 1).color(r, g, b, a).endVertex();
-                    vertexConsumer.vertex(matrix, (float) size1, (float) 0, (float) 0).color(1F, 1F, 1F, opacity).uv(1, 0).color(r, g, b, a).endVertex();
-                    vertexConsumer.vertex(matrix, (float) 0, (float) 0, (float) 0).color(1F, 1F, 1F, opacity).uv(0, 0).color(r, g, b, a).endVertex();
+                    vertexConsumer.vertex(matrix, (float) 0, (float) size1, (float) 0).color(1F, 1F, 1F, opacity).uv(texture.minU(), texture.maxV()).color(r, g, b, a).endVertex();
+                    vertexConsumer.vertex(matrix, (float) size1, (float) size1, (float) 0).color(1F, 1F, 1F, opacity).uv(texture.maxU(), texture.maxV()).color(r, g, b, a).endVertex();
+                    vertexConsumer.vertex(matrix, (float) size1, (float) 0, (float) 0).color(1F, 1F, 1F, opacity).uv(texture.maxU(), texture.minV()).color(r, g, b, a).endVertex();
+                    vertexConsumer.vertex(matrix, (float) 0, (float) 0, (float) 0).color(1F, 1F, 1F, opacity).uv(texture.minU(), texture.minV()).color(r, g, b, a).endVertex();
                     return;
                 }
 
             }
-            super.renderer().render(graphics, size1, id, opacity, renderTileContext);
+            super.renderer().render(graphics, size1, texture, opacity, renderTileContext);
         };
     }
 
     @Override
     public boolean isComplete() {
-        return this.image != null && this.biomesData != null && this.sampleResolution > 0;
+        return this.grid != null && this.biomesData != null && this.sampleResolution > 0;
     }
 
     @Override
     @Nullable
     public List<Component> toolTip(double mouseScreenX, double mouseScreenY, int mouseWorldX, int mouseWorldZ, int mouseTileLocalX, int mouseTileLocalY) {
-        int storageX = mouseTileLocalX / sampleResolution;
-        int storageZ = mouseTileLocalY / sampleResolution;
+        int step = this.grid.step(this.sampleResolution);
+        int storageX = (mouseTileLocalX / sampleResolution) * step;
+        int storageZ = (mouseTileLocalY / sampleResolution) * step;
         Holder<Biome> biomeResourceKey = this.biomesData.getBiome(storageX, storageZ, mouseWorldX, mouseWorldZ, (worldX1, worldZ1) -> null);
 
         return Collections.singletonList(Component.literal("Biome: " + biomeResourceKey.unwrapKey().get().location()).withStyle(Style.EMPTY.withColor(FAST_COLORS.getOrDefault(biomeResourceKey, FastColor.ARGB32.color(255, 255, 255, 255)))));
@@ -268,9 +234,4 @@ public class BiomeLayer extends TileLayer {
         compoundTag.putInt("res", this.sampleResolution);
         return compoundTag;
     }
-
-    @Override
-    public NativeImage image() {
-        return this.image;
-    }
 }
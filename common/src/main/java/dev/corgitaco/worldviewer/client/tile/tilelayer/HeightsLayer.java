@@ -5,10 +5,10 @@ import com.mojang.blaze3d.vertex.VertexConsumer;
 import dev.corgitaco.worldviewer.client.ClientUtil;
 import dev.corgitaco.worldviewer.client.WVRenderType;
 import dev.corgitaco.worldviewer.common.storage.DataTileManager;
+import dev.corgitaco.worldviewer.common.worldgen.DensityGridSampler;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.NbtIo;
 import net.minecraft.network.chat.Component;
 import net.minecraft.util.FastColor;
 import net.minecraft.util.Mth;
@@ -17,99 +17,80 @@ import net.minecraft.world.level.LevelHeightAccessor;
 import net.minecraft.world.level.levelgen.Heightmap;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-public class HeightsLayer extends TileLayer {
-
-    @Nullable
-    private final NativeImage image;
+public class HeightsLayer extends ProgressiveTileLayer {
 
     @Nullable
     private final int[] heightsData;
 
-    public HeightsLayer(DataTileManager tileManager, int y, int worldX, int worldZ, int size, int sampleResolution, LongSet sampledChunks, @Nullable HeightsLayer lowerResolution) {
+    public HeightsLayer(DataTileManager tileManager, int y, int worldX, int worldZ, int size, int sampleResolution, int targetSampleResolution, LongSet sampledChunks, @Nullable HeightsLayer lowerResolution) {
         super(tileManager, y, worldX, worldZ, size, sampleResolution, sampledChunks, lowerResolution);
 
         int sampledSize = size / sampleResolution;
-        NativeImage colorData = ClientUtil.createImage(sampledSize, sampledSize, true);
-        int[] data = new int[sampledSize * sampledSize];
-        Arrays.fill(data, Integer.MIN_VALUE);
-
-        if (lowerResolution != null) {
-
-            int previousSampledSize = size / lowerResolution.sampleResolution;
-
-            int scale = sampledSize / previousSampledSize;
+        ProgressiveSampleGrid grid = beginPass(lowerResolution, size, sampleResolution, targetSampleResolution);
+        int step = grid.step(sampleResolution);
+        int coarseStep = grid.completedStep();
+        boolean inPlace = isInPlace(grid, lowerResolution);
+
+        int[] data;
+        if (coarseStep != 0) {
+            // Only a pass refining the lower layer's own grid may refine its samples as well, a pass on a grid of its own can run
+            // next to another one over the same lower layer.
+            data = inPlace ? lowerResolution.heightsData : lowerResolution.heightsData.clone();
+        } else {
+            data = new int[grid.width() * grid.width()];
+            Arrays.fill(data, Integer.MIN_VALUE);
+        }
+        int[] samples = passSamples(grid, data, sampledSize, step, coarseStep, Integer.MIN_VALUE);
 
-            for (int sampleX = 0; sampleX < previousSampledSize; sampleX++) {
-                for (int sampleZ = 0; sampleZ < previousSampledSize; sampleZ++) {
-                    int foundCaveBlocks = lowerResolution.heightsData[sampleX + sampleZ * previousSampledSize];
-                    data[(sampleX * scale) + (sampleZ * scale) * sampledSize] = foundCaveBlocks;
-                }
-            }
+        DensityGridSampler densityGridSampler = tileManager.densityGridSampler();
+        if (densityGridSampler != null && !densityGridSampler.sampleOceanFloor(worldX, worldZ, sampledSize, sampleResolution, samples, TileLayer::isGenerationCancelled)) {
+            this.heightsData = null;
+            abandonPass(grid);
+            return;
         }
 
         BlockPos.MutableBlockPos worldPos = new BlockPos.MutableBlockPos();
         for (int sampleX = 0; sampleX < sampledSize; sampleX++) {
             for (int sampleZ = 0; sampleZ < sampledSize; sampleZ++) {
-                if (Thread.currentThread().isInterrupted()) {
+                if (isGenerationCancelled()) {
                     this.heightsData = null;
-                    this.image = null;
-                    colorData.close();
+                    abandonPass(grid);
                     return;
                 }
+                int pixelX = sampleX * step;
+                int pixelZ = sampleZ * step;
+                boolean newSample = ProgressiveSampleGrid.isNewSample(pixelX, pixelZ, coarseStep);
+                if (!newSample && inPlace) {
+                    continue;
+                }
                 worldPos.set(worldX + (sampleX * sampleResolution), 0, worldZ + (sampleZ * sampleResolution));
 
-                int idx = sampleX + sampleZ * sampledSize;
-                int previous = data[idx];
-                int worldY;
-
-                if (previous == Integer.MIN_VALUE) {
+                int worldY = samples[sampleX + sampleZ * sampledSize];
+                if (worldY == Integer.MIN_VALUE) {
                     sampledChunks.add(ChunkPos.asLong(worldPos));
                     worldY = tileManager.getHeight(Heightmap.Types.OCEAN_FLOOR, worldPos.getX(), worldPos.getZ());
-                } else {
-                    worldY = previous;
                 }
 
-                int grayScale = getGrayScale(worldY, tileManager.serverLevel());
-                colorData.setPixelRGBA(sampleX, sampleZ, grayScale);
-                data[idx] = worldY;
+                grid.fill(pixelX, pixelZ, step, getGrayScale(worldY, tileManager.serverLevel()));
+                data[grid.index(pixelX, pixelZ)] = worldY;
             }
         }
 
-        this.image = colorData;
         this.heightsData = data;
+        finishPass(grid, step);
     }
 
-    public HeightsLayer(int size, Path imagePath, Path dataPath, int sampleResolution) throws Exception {
-        super(size, imagePath, dataPath, sampleResolution);
-        File dataPathFile = dataPath.toFile();
-        File imagePathFile = imagePath.toFile();
-        if (dataPathFile.exists() && imagePathFile.exists()) {
-            while (!imagePathFile.canRead() || !dataPathFile.canRead()) {
-                Thread.sleep(1);
-            }
-            try {
-                CompoundTag compoundTag = NbtIo.read(dataPath.toFile());
-                this.heightsData = compoundTag.getIntArray("heights");
-                this.sampleResolution = compoundTag.getInt("res");
-                this.image = NativeImage.read(Files.readAllBytes(imagePath));
-                if (this.image.getWidth() != (size / this.sampleResolution)) {
-                    throw new IllegalArgumentException("Improper image width.");
-                }
-            } catch (IOException e) {
-                throw e;
-            }
-        } else {
-            this.heightsData = null;
-            this.image = null;
-            this.sampleResolution = Integer.MIN_VALUE;
+    public HeightsLayer(int size, @Nullable NativeImage image, CompoundTag data, int sampleResolution) {
+        super(size, image, data, sampleResolution);
+        this.heightsData = data.getIntArray("heights");
+        this.sampleResolution = data.getInt("res");
+        this.grid = ProgressiveSampleGrid.fromDisk(this, image, size, this.sampleResolution);
+        if (this.heightsData.length != this.grid.width() * this.grid.width()) {
+            throw new IllegalArgumentException("Improper heights length.");
         }
     }
 
@@ -121,7 +102,7 @@ public class HeightsLayer extends TileLayer {
 
     @Override
     public @Nullable List<Component> toolTip(double mouseScreenX, double mouseScreenY, int mouseWorldX, int mouseWorldZ, int mouseTileLocalX, int mouseTileLocalY) {
-        int y = heightsData[(mouseTileLocalX / sampleResolution) + (mouseTileLocalY / sampleResolution) * ((int) Math.sqrt(this.heightsData.length - 1))];
+        int y = heightsData[this.grid.sampleIndex(mouseTileLocalX, mouseTileLocalY, this.sampleResolution)];
 
         return Collections.singletonList(Component.literal("Ocean Floor Height: " + y));
     }
@@ -129,20 +110,15 @@ public class HeightsLayer extends TileLayer {
 
     @Override
     public Renderer renderer() {
-        return (graphics, size1, id, opacity, renderTileContext) -> {
-            VertexConsumer vertexConsumer = graphics.bufferSource().getBuffer(WVRenderType.WORLD_VIEWER_GUI.apply(id, WVRenderType.DST_COLOR_SRC_ALPHA_TRANSPARENCY));
-            ClientUtil.blit(vertexConsumer, graphics.pose(), opacity, 0, 0, 0F, 0F, size1, size1, size1, size1);
+        return (graphics, size1, texture, opacity, renderTileContext) -> {
+            VertexConsumer vertexConsumer = graphics.bufferSource().getBuffer(texture.renderType(WVRenderType.WORLD_VIEWER_GUI, WVRenderType.DST_COLOR_SRC_ALPHA_TRANSPARENCY));
+            ClientUtil.blitRegion(vertexConsumer, graphics.pose(), opacity, 0, 0, size1, size1, texture);
         };
     }
 
     @Override
     public boolean isComplete() {
-        return this.image != null && this.heightsData != null && this.sampleResolution > 0;
-    }
-
-    @Override
-    public NativeImage image() {
-        return this.image;
+        return this.grid != null && this.heightsData != null && this.sampleResolution > 0;
     }
 
     @Override
@@ -1,12 +1,12 @@
 package dev.corgitaco.worldviewer.client.tile.tilelayer;
 
 import com.mojang.blaze3d.platform.NativeImage;
-import dev.corgitaco.worldviewer.client.ClientUtil;
 import dev.corgitaco.worldviewer.common.storage.DataTileManager;
+import dev.corgitaco.worldviewer.common.worldgen.CaveColumnSampler;
+import dev.corgitaco.worldviewer.common.worldgen.DensityGridSampler;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.NbtIo;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.tags.FluidTags;
 import net.minecraft.util.FastColor;
@@ -18,22 +18,14 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.chunk.ChunkGenerator;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Arrays;
 
-public class NoiseCaveLayer extends TileLayer {
-
-    @Nullable
-    private final NativeImage image;
-
+public class NoiseCaveLayer extends ProgressiveTileLayer {
 
     private final int[] foundCaveBlocks;
 
 
-    public NoiseCaveLayer(DataTileManager dataTileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, LongSet sampledChunks, @Nullable NoiseCaveLayer lowerResolution) {
+    public NoiseCaveLayer(DataTileManager dataTileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, int targetSampleResolution, LongSet sampledChunks, @Nullable NoiseCaveLayer lowerResolution) {
         super(dataTileManager, y, tileWorldX, tileWorldZ, size, sampleResolution, sampledChunks, lowerResolution);
         ServerLevel serverLevel = dataTileManager.serverLevel();
         ChunkGenerator generator = serverLevel.getChunkSource().getGenerator();
@@ -43,41 +35,55 @@ public class NoiseCaveLayer extends TileLayer {
 
 
         int sampledSize = size / sampleResolution;
-        NativeImage colorData = ClientUtil.createImage(sampledSize, sampledSize, true);
-
-        int[] data = new int[sampledSize * sampledSize];
-        Arrays.fill(data, -1);
-
-        if (lowerResolution != null) {
-            int previousSampledSize = size / lowerResolution.sampleResolution;
-
-            int scale = sampledSize / previousSampledSize;
-
-            for (int sampleX = 0; sampleX < previousSampledSize; sampleX++) {
-                for (int sampleZ = 0; sampleZ < previousSampledSize; sampleZ++) {
-                    int foundCaveBlocks = lowerResolution.foundCaveBlocks[sampleX + sampleZ * previousSampledSize];
-                    data[(sampleX * scale) + (sampleZ * scale) * sampledSize] = foundCaveBlocks;
-                }
-            }
+        ProgressiveSampleGrid grid = beginPass(lowerResolution, size, sampleResolution, targetSampleResolution);
+        int step = grid.step(sampleResolution);
+        int coarseStep = grid.completedStep();
+        boolean inPlace = isInPlace(grid, lowerResolution);
+
+        int[] data;
+        if (coarseStep != 0) {
+            // Only a pass refining the lower layer's own grid may refine its samples as well, a pass on a grid of its own can run
+            // next to another one over the same lower layer.
+            data = inPlace ? lowerResolution.foundCaveBlocks : lowerResolution.foundCaveBlocks.clone();
+        } else {
+            data = new int[grid.width() * grid.width()];
+            Arrays.fill(data, -1);
+        }
+        int[] samples = passSamples(grid, data, sampledSize, step, coarseStep, -1);
+
+        DensityGridSampler densityGridSampler = dataTileManager.densityGridSampler();
+        CaveColumnSampler caveColumnSampler = dataTileManager.caveColumnSampler();
+        boolean completed = true;
+        if (densityGridSampler != null) {
+            completed = densityGridSampler.countCaveBlocks(tileWorldX, tileWorldZ, sampledSize, sampleResolution, minBuildHeight, seaLevel, samples, TileLayer::isGenerationCancelled);
+        } else if (caveColumnSampler != null) {
+            completed = caveColumnSampler.countCaveBlocks(tileWorldX, tileWorldZ, sampledSize, sampleResolution, minBuildHeight, seaLevel, samples, TileLayer::isGenerationCancelled);
+        }
+        if (!completed) {
+            this.foundCaveBlocks = null;
+            abandonPass(grid);
+            return;
         }
 
         BlockPos.MutableBlockPos worldPos = new BlockPos.MutableBlockPos();
         for (int sampleX = 0; sampleX < sampledSize; sampleX++) {
             for (int sampleZ = 0; sampleZ < sampledSize; sampleZ++) {
-                if (Thread.currentThread().isInterrupted()) {
-                    this.image = null;
+                if (isGenerationCancelled()) {
                     this.foundCaveBlocks = null;
-                    colorData.close();
+                    abandonPass(grid);
                     return;
                 }
+                int pixelX = sampleX * step;
+                int pixelZ = sampleZ * step;
+                if (!ProgressiveSampleGrid.isNewSample(pixelX, pixelZ, coarseStep) && inPlace) {
+                    continue;
+                }
                 worldPos.set(tileWorldX + (sampleX * sampleResolution), 0, tileWorldZ + (sampleZ * sampleResolution));
 
-                int foundCaveBlocks = 0;
-
-                int idx = sampleX + sampleZ * sampledSize;
-                int previous = data[idx];
+                int foundCaveBlocks = samples[sampleX + sampleZ * sampledSize];
 
-                if (previous == -1) {
+                if (foundCaveBlocks == -1) {
+                    foundCaveBlocks = 0;
                     sampledChunks.add(ChunkPos.asLong(worldPos));
                     NoiseColumn baseColumn = generator.getBaseColumn(worldPos.getX(), worldPos.getZ(), serverLevel, serverLevel.getChunkSource().randomState());
                     for (int index = minBuildHeight; index < seaLevel; index++) {
@@ -86,47 +92,28 @@ public class NoiseCaveLayer extends TileLayer {
                             foundCaveBlocks++;
                         }
                     }
-                } else {
-                    foundCaveBlocks = previous;
                 }
-                data[idx] = foundCaveBlocks;
+                data[grid.index(pixelX, pixelZ)] = foundCaveBlocks;
 
                 if (foundCaveBlocks > 2) {
-                    int grayScale = getGrayScale(((float) foundCaveBlocks) / ((float) searchRange), dataTileManager.serverLevel());
-                    colorData.setPixelRGBA(sampleX, sampleZ, grayScale);
+                    grid.fill(pixelX, pixelZ, step, getGrayScale(((float) foundCaveBlocks) / ((float) searchRange), dataTileManager.serverLevel()));
                 } else {
-                    colorData.setPixelRGBA(sampleX, sampleZ, FastColor.ABGR32.color(1, 0, 0, 0));
+                    grid.fill(pixelX, pixelZ, step, FastColor.ABGR32.color(1, 0, 0, 0));
 
                 }
             }
         }
         this.foundCaveBlocks = data;
-        this.image = colorData;
+        finishPass(grid, step);
     }
 
-    public NoiseCaveLayer(int size, Path imagePath, Path dataPath, int sampleResolution) throws Exception {
-        super(size, imagePath, dataPath, sampleResolution);
-        File dataPathFile = dataPath.toFile();
-        File imagePathFile = imagePath.toFile();
-        if (dataPathFile.exists() && imagePathFile.exists()) {
-            while (!imagePathFile.canRead() || !dataPathFile.canRead()) {
-                Thread.sleep(1);
-            }
-            try {
-                CompoundTag compoundTag = NbtIo.read(dataPath.toFile());
-                this.sampleResolution = compoundTag.getInt("res");
-                this.foundCaveBlocks = compoundTag.getIntArray("cave_blocks");
-                this.image = NativeImage.read(Files.readAllBytes(imagePath));
-                if (this.image.getWidth() != (size / this.sampleResolution)) {
-                    throw new IllegalArgumentException("Improper image width.");
-                }
-            } catch (IOException e) {
-                throw e;
-            }
-        } else {
-            this.image = null;
-            this.foundCaveBlocks = null;
-            this.sampleResolution = Integer.MIN_VALUE;
+    public NoiseCaveLayer(int size, @Nullable NativeImage image, CompoundTag data, int sampleResolution) {
+        super(size, image, data, sampleResolution);
+        this.sampleResolution = data.getInt("res");
+        this.foundCaveBlocks = data.getIntArray("cave_blocks");
+        this.grid = ProgressiveSampleGrid.fromDisk(this, image, size, this.sampleResolution);
+        if (this.foundCaveBlocks.length != this.grid.width() * this.grid.width()) {
+            throw new IllegalArgumentException("Improper cave blocks length.");
         }
     }
 
@@ -135,11 +122,6 @@ public class NoiseCaveLayer extends TileLayer {
         return FastColor.ABGR32.color(255, 0, 0, color);
     }
 
-    @Override
-    public @Nullable NativeImage image() {
-        return this.image;
-    }
-
     @Override
     @Nullable
     public CompoundTag tag() {
@@ -151,6 +133,6 @@ public class NoiseCaveLayer extends TileLayer {
 
     @Override
     public boolean isComplete() {
-        return this.image != null && this.sampleResolution > 0;
+        return this.grid != null && this.sampleResolution > 0;
     }
 }
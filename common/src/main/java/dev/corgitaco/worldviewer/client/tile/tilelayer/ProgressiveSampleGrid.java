@@ -0,0 +1,333 @@
+package dev.corgitaco.worldviewer.client.tile.tilelayer;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import dev.corgitaco.worldviewer.client.ClientUtil;
+import dev.corgitaco.worldviewer.client.NativeImagePool;
+import dev.corgitaco.worldviewer.client.WVTileTexture;
+import dev.corgitaco.worldviewer.client.tile.storage.TilePayload;
+import dev.corgitaco.worldviewer.mixin.NativeImageAccessor;
+import it.unimi.dsi.fastutil.ints.Int2ObjectArrayMap;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.util.Mth;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+
+/**
+ * A tile layer's image at the tile's finest sample resolution, refined in place by every LOD of the tile.
+ * <p>
+ * A pass at {@code step} pixels per sample only samples the pixels the previous pass, at twice the step, did not, and paints the
+ * {@code step x step} block below each of them so the image is complete at every LOD. Going from 8x to 1x samples every pixel
+ * exactly once. Layers keep their samples at pixel coordinates of this grid and share the arrays between LODs as well.
+ * <p>
+ * A grid started by a tile's coarsest pass only holds that pass's samples, one pixel each, and grows to the full image when the
+ * first finer pass borrows it, so tiles that are never refined never claim their finest resolution.
+ * <p>
+ * The image has a single owner. A finer layer borrows it while its pass runs and only becomes the owner once it replaced the
+ * previous LOD on screen ({@link #completeRefinement}), so a pass that is cancelled or discarded leaves the previous layer intact.
+ * Closing the owner while a pass is running is deferred until the pass either completes, and the image lives on with the new owner,
+ * or is given up.
+ * <p>
+ * The grid also keeps the tile's {@link WVTileTexture}, which every LOD draws through. A pass coarser than a pixel packs its samples
+ * into a small image of their own once it is done, on its generator thread, so uploads copy a whole image instead of striding
+ * through the grid on the render thread. A pass only writes pixels its coarser samples don't sit on, so packing never races the
+ * next pass painting.
+ */
+public final class ProgressiveSampleGrid {
+
+    private NativeImage image;
+    // Grid pixels per image pixel, above 1 only until the first refinement of a grid started by a coarse pass.
+    private int imageStep;
+    private final int width;
+    private final int pixelSize;
+
+    private int completedStep;
+    private TileLayer owner;
+    @Nullable
+    private TileLayer borrower;
+    private int borrowedStep;
+    private boolean closeRequested;
+    private boolean closed;
+    @Nullable
+    private WVTileTexture texture;
+    // Packed samples by step, at most those of the owner's and the borrower's pass.
+    private final Int2ObjectArrayMap<NativeImage> packed = new Int2ObjectArrayMap<>(2);
+
+    private ProgressiveSampleGrid(TileLayer owner, NativeImage image, int imageStep, int width, int pixelSize, int completedStep) {
+        this.owner = owner;
+        this.image = image;
+        this.imageStep = imageStep;
+        this.width = width;
+        this.pixelSize = pixelSize;
+        this.completedStep = completedStep;
+    }
+
+    /**
+     * @param step      the step of the pass creating the grid.
+     * @param knownStep the step of samples the new layer already has data for, painted from that data during the first pass, or 0.
+     */
+    public static ProgressiveSampleGrid create(TileLayer owner, int size, int finestSampleResolution, int step, int knownStep) {
+        int width = size / finestSampleResolution;
+        // A pass that repaints known samples is already a refinement and needs every pixel.
+        int imageStep = knownStep == 0 ? Mth.clamp(step, 1, width) : 1;
+        int imageWidth = width / imageStep;
+        return new ProgressiveSampleGrid(owner, NativeImagePool.acquire(imageWidth, imageWidth, true), imageStep, width, finestSampleResolution, knownStep);
+    }
+
+    /**
+     * Wraps an image read from disk whose samples were completed at {@code sampleResolution}.
+     */
+    public static ProgressiveSampleGrid fromDisk(TileLayer owner, @Nullable NativeImage image, int size, int sampleResolution) {
+        if (image == null || image.getWidth() <= 0 || image.getWidth() != image.getHeight() || size % image.getWidth() != 0) {
+            throw new IllegalArgumentException("Improper image width.");
+        }
+        int pixelSize = size / image.getWidth();
+        if (sampleResolution < pixelSize || sampleResolution % pixelSize != 0) {
+            throw new IllegalArgumentException("Sample resolution %s does not fit pixels of %s blocks.".formatted(sampleResolution, pixelSize));
+        }
+        ProgressiveSampleGrid grid = new ProgressiveSampleGrid(owner, image, 1, image.getWidth(), pixelSize, sampleResolution / pixelSize);
+        grid.packSamples(grid.completedStep);
+        return grid;
+    }
+
+    /**
+     * Lends the image to {@code borrower} for a pass at {@code sampleResolution}.
+     *
+     * @return false if the image can't be refined in place to that resolution, the borrower then starts a grid of its own.
+     */
+    public synchronized boolean beginRefinement(TileLayer borrower, int sampleResolution, int finestSampleResolution) {
+        int step = sampleResolution / this.pixelSize;
+        if (this.closed || this.closeRequested || this.borrower != null || this.pixelSize != finestSampleResolution || step * 2 != this.completedStep) {
+            return false;
+        }
+        if (this.imageStep > 1) {
+            growImage();
+        }
+        this.borrower = borrower;
+        this.borrowedStep = step;
+        return true;
+    }
+
+    /**
+     * Spreads the samples of the coarse image over a full one, the coarse image stays on as the owner's packed samples.
+     */
+    private void growImage() {
+        NativeImage coarse = this.image;
+        int imageStep = this.imageStep;
+        NativeImage image = NativeImagePool.acquire(this.width, this.width, false);
+        long from = ((NativeImageAccessor) (Object) coarse).wvGetPixels();
+        long to = ((NativeImageAccessor) (Object) image).wvGetPixels();
+        int coarseWidth = coarse.getWidth();
+        long rowBytes = (long) this.width * 4;
+        for (int coarseZ = 0; coarseZ < coarseWidth; coarseZ++) {
+            long row = to + coarseZ * imageStep * rowBytes;
+            for (int coarseX = 0; coarseX < coarseWidth; coarseX++) {
+                int abgr = MemoryUtil.memGetInt(from + ((long) coarseZ * coarseWidth + coarseX) * 4);
+                for (int x = coarseX * imageStep; x < (coarseX + 1) * imageStep; x++) {
+                    MemoryUtil.memPutInt(row + x * 4L, abgr);
+                }
+            }
+            // The rest of the block's rows repeat its first.
+            for (int z = 1; z < imageStep; z++) {
+                MemoryUtil.memCopy(row, row + z * rowBytes, rowBytes);
+            }
+        }
+
+        NativeImage previous = this.packed.put(imageStep, coarse);
+        if (previous != null) {
+            NativeImagePool.release(previous);
+        }
+        this.image = image;
+        this.imageStep = 1;
+    }
+
+    /**
+     * Hands ownership to the borrower once its pass is displayed, does nothing for any other layer.
+     */
+    public synchronized void completeRefinement(TileLayer layer) {
+        if (this.borrower != layer) {
+            return;
+        }
+        this.owner = layer;
+        this.borrower = null;
+        this.completedStep = this.borrowedStep;
+        // The previous owner's close was deferred for the pass, the image now belongs to the layer that replaced it.
+        this.closeRequested = false;
+        for (int step : this.packed.keySet().toIntArray()) {
+            if (step != this.completedStep) {
+                NativeImagePool.release(this.packed.remove(step));
+            }
+        }
+    }
+
+    /**
+     * Marks the pass of a layer that owns the grid outright, i.e. did not borrow it, as done.
+     */
+    public synchronized void completeOwnPass(TileLayer layer, int step) {
+        if (this.owner == layer && this.borrower == null) {
+            this.completedStep = step;
+        }
+    }
+
+    /**
+     * Called when {@code layer} is closed. The owner closes the image unless a pass is running, a borrower gives its pass up.
+     */
+    public synchronized void release(TileLayer layer) {
+        if (this.closed) {
+            return;
+        }
+        if (layer == this.borrower) {
+            this.borrower = null;
+            if (this.closeRequested) {
+                closeImage();
+            }
+        } else if (layer == this.owner) {
+            if (this.borrower != null) {
+                this.closeRequested = true;
+            } else {
+                closeImage();
+            }
+        }
+    }
+
+    private void closeImage() {
+        this.closed = true;
+        NativeImagePool.release(this.image);
+        this.packed.values().forEach(NativeImagePool::release);
+        this.packed.clear();
+        if (this.texture != null) {
+            this.texture.releaseId();
+        }
+    }
+
+    /**
+     * Uploads the samples of a pass at {@code step} to the tile's texture, called on the render thread.
+     *
+     * @return the texture id, 0 if the image was closed.
+     */
+    public synchronized int uploadTexture(int step) {
+        if (this.closed) {
+            return 0;
+        }
+        int level = Mth.log2(step);
+        if (this.texture == null) {
+            this.texture = new WVTileTexture(this.width, level);
+        }
+        this.texture.uploadLevel(samples(step), level);
+        return this.texture.getId();
+    }
+
+    /**
+     * Uploads the samples of a pass at {@code step} to the bound texture at the given offset, called on the render thread.
+     */
+    public synchronized void uploadSamples(int step, int xOffset, int yOffset) {
+        if (!this.closed) {
+            ClientUtil.uploadSamples(samples(step), 0, xOffset, yOffset);
+        }
+    }
+
+    /**
+     * Packs the samples of a finished pass at {@code step} into an image of their own, called by the pass on its generator thread.
+     */
+    public void packSamples(int step) {
+        if (step <= this.imageStep) {
+            return;
+        }
+        NativeImage samples = pack(step);
+        synchronized (this) {
+            if (this.closed) {
+                NativeImagePool.release(samples);
+                return;
+            }
+            NativeImage previous = this.packed.put(step, samples);
+            if (previous != null) {
+                NativeImagePool.release(previous);
+            }
+        }
+    }
+
+    /**
+     * @return the samples of a pass at {@code step} as a whole image, called holding the lock of an open grid.
+     */
+    private NativeImage samples(int step) {
+        if (step <= this.imageStep) {
+            return this.image;
+        }
+        NativeImage samples = this.packed.get(step);
+        if (samples == null) {
+            // Only a layer that was already replaced asks for a step that isn't packed, packing it here is the rare slow path.
+            samples = pack(step);
+            this.packed.put(step, samples);
+        }
+        return samples;
+    }
+
+    private NativeImage pack(int step) {
+        int sampledWidth = Math.max(1, this.width / step);
+        NativeImage samples = NativeImagePool.acquire(sampledWidth, sampledWidth, false);
+        ClientUtil.copySamples(this.image, step / this.imageStep, samples);
+        return samples;
+    }
+
+    public synchronized NativeImage image() {
+        return this.image;
+    }
+
+    /**
+     * @return the grid's persisted form, stored at its full resolution even while only its coarse samples are held.
+     */
+    public synchronized byte[] encode(CompoundTag data) throws IOException {
+        return TilePayload.encode(this.image, this.imageStep, data);
+    }
+
+    public int width() {
+        return this.width;
+    }
+
+    public int pixelSize() {
+        return this.pixelSize;
+    }
+
+    public int step(int sampleResolution) {
+        return sampleResolution / this.pixelSize;
+    }
+
+    public synchronized int completedStep() {
+        return this.completedStep;
+    }
+
+    public int index(int pixelX, int pixelZ) {
+        return pixelX + pixelZ * this.width;
+    }
+
+    /**
+     * @return the index of the sample covering the given block of the tile at {@code sampleResolution}.
+     */
+    public int sampleIndex(int tileLocalX, int tileLocalZ, int sampleResolution) {
+        int step = step(sampleResolution);
+        return index((tileLocalX / sampleResolution) * step, (tileLocalZ / sampleResolution) * step);
+    }
+
+    /**
+     * @return true if a pass at {@code step} has to sample this pixel, false if a pass at {@code coarseStep} already did.
+     */
+    public static boolean isNewSample(int pixelX, int pixelZ, int coarseStep) {
+        return coarseStep == 0 || pixelX % coarseStep != 0 || pixelZ % coarseStep != 0;
+    }
+
+    public void fill(int pixelX, int pixelZ, int step, int abgr) {
+        if (this.imageStep > 1) {
+            // Only the coarse pass that created the grid paints it before it grows, one pixel per sample.
+            this.image.setPixelRGBA(pixelX / this.imageStep, pixelZ / this.imageStep, abgr);
+            return;
+        }
+        int maxX = Math.min(pixelX + step, this.width);
+        int maxZ = Math.min(pixelZ + step, this.width);
+        for (int z = pixelZ; z < maxZ; z++) {
+            for (int x = pixelX; x < maxX; x++) {
+                this.image.setPixelRGBA(x, z, abgr);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package dev.corgitaco.worldviewer.client.tile.tilelayer;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import dev.corgitaco.worldviewer.common.storage.DataTileManager;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.nbt.CompoundTag;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * A layer whose LODs refine one {@link ProgressiveSampleGrid} in place instead of each allocating an image of their own.
+ */
+public abstract class ProgressiveTileLayer extends TileLayer {
+
+    @Nullable
+    protected ProgressiveSampleGrid grid;
+
+    public ProgressiveTileLayer(DataTileManager dataTileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, LongSet sampledChunks, @Nullable TileLayer lowerResolution) {
+        super(dataTileManager, y, tileWorldX, tileWorldZ, size, sampleResolution, sampledChunks, lowerResolution);
+    }
+
+    public ProgressiveTileLayer(int size, @Nullable NativeImage image, CompoundTag data, int sampleResolution) {
+        super(size, image, data, sampleResolution);
+    }
+
+    /**
+     * Borrows the lower resolution's grid for this layer's pass, or starts a grid of its own when that isn't possible. The returned
+     * grid's {@link ProgressiveSampleGrid#completedStep()} is the step of samples this pass can reuse, 0 if there are none.
+     */
+    protected ProgressiveSampleGrid beginPass(@Nullable ProgressiveTileLayer lowerResolution, int size, int sampleResolution, int finestSampleResolution) {
+        int step = sampleResolution / finestSampleResolution;
+        ProgressiveSampleGrid lowerGrid = lowerResolution != null ? lowerResolution.grid : null;
+        if (lowerGrid != null) {
+            if (lowerGrid.beginRefinement(this, sampleResolution, finestSampleResolution)) {
+                return lowerGrid;
+            }
+            int coarseStep = lowerGrid.completedStep();
+            if (lowerGrid.pixelSize() == finestSampleResolution && coarseStep == lowerGrid.step(sampleResolution) * 2) {
+                // The image is closed or busy but the samples are still good, they are repainted into a new image.
+                return ProgressiveSampleGrid.create(this, size, finestSampleResolution, step, coarseStep);
+            }
+        }
+        return ProgressiveSampleGrid.create(this, size, finestSampleResolution, step, 0);
+    }
+
+    /**
+     * @return true if {@code grid} still holds the lower resolution's pixels, which then don't need to be painted again.
+     */
+    protected static boolean isInPlace(ProgressiveSampleGrid grid, @Nullable ProgressiveTileLayer lowerResolution) {
+        return lowerResolution != null && lowerResolution.grid == grid;
+    }
+
+    /**
+     * Lays the samples of this pass out as the {@code sampledSize * sampledSize} grid the column samplers work on, samples the grid
+     * already has are copied from {@code data} and every other entry is {@code missing}.
+     */
+    protected static int[] passSamples(ProgressiveSampleGrid grid, int[] data, int sampledSize, int step, int coarseStep, int missing) {
+        int[] samples = new int[sampledSize * sampledSize];
+        for (int sampleZ = 0; sampleZ < sampledSize; sampleZ++) {
+            for (int sampleX = 0; sampleX < sampledSize; sampleX++) {
+                int pixelX = sampleX * step;
+                int pixelZ = sampleZ * step;
+                samples[sampleX + sampleZ * sampledSize] = ProgressiveSampleGrid.isNewSample(pixelX, pixelZ, coarseStep) ? missing : data[grid.index(pixelX, pixelZ)];
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Packs the samples of the pass at {@code step} for upload and publishes the grid once it sampled every pixel it had to. A
+     * borrowed grid is only handed over by {@link #claim()}.
+     */
+    protected void finishPass(ProgressiveSampleGrid grid, int step) {
+        grid.packSamples(step);
+        this.grid = grid;
+        grid.completeOwnPass(this, step);
+    }
+
+    /**
+     * Gives the grid up after a cancelled pass, the lower resolution keeps its image.
+     */
+    protected void abandonPass(ProgressiveSampleGrid grid) {
+        grid.release(this);
+        this.grid = null;
+    }
+
+    @Override
+    public void claim() {
+        if (this.grid != null) {
+            this.grid.completeRefinement(this);
+        }
+    }
+
+    @Override
+    public int textureId() {
+        return this.grid != null ? this.grid.uploadTexture(this.grid.step(this.sampleResolution)) : -1;
+    }
+
+    @Override
+    public int displayWidth() {
+        return this.grid.width() / this.grid.step(this.sampleResolution);
+    }
+
+    @Override
+    public void uploadDisplay(int xOffset, int yOffset) {
+        this.grid.uploadSamples(this.grid.step(this.sampleResolution), xOffset, yOffset);
+    }
+
+    @Override
+    @Nullable
+    public NativeImage image() {
+        return this.grid != null ? this.grid.image() : null;
+    }
+
+    @Override
+    public byte[] encode(CompoundTag tag) throws IOException {
+        return this.grid.encode(tag);
+    }
+
+    @Override
+    protected void close() {
+        if (this.grid != null) {
+            this.grid.release(this);
+        }
+    }
+}
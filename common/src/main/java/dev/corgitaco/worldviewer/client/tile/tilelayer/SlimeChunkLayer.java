@@ -1,22 +1,17 @@
 package dev.corgitaco.worldviewer.client.tile.tilelayer;
 
 import com.mojang.blaze3d.platform.NativeImage;
-import dev.corgitaco.worldviewer.client.ClientUtil;
+import dev.corgitaco.worldviewer.client.NativeImagePool;
 import dev.corgitaco.worldviewer.common.storage.DataTileManager;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.core.SectionPos;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.NbtIo;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.Style;
 import net.minecraft.util.FastColor;
 import net.minecraft.world.level.ChunkPos;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 
@@ -28,14 +23,14 @@ public class SlimeChunkLayer extends TileLayer {
     @Nullable
     private final boolean[] slimeChunkData;
 
-    public SlimeChunkLayer(DataTileManager tileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, LongSet sampledChunks, @Nullable SlimeChunkLayer higherResolution) {
+    public SlimeChunkLayer(DataTileManager tileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, int targetSampleResolution, LongSet sampledChunks, @Nullable SlimeChunkLayer higherResolution) {
         super(tileManager, y, tileWorldX, tileWorldZ, size, sampleResolution, sampledChunks, higherResolution);
         NativeImage nativeImage;
         int dataSize = SectionPos.blockToSectionCoord(size);
 
         boolean[] data = new boolean[dataSize * dataSize];
         if (sampleResolution <= 16 && size <= 128) {
-            nativeImage = ClientUtil.createImage(size, size, true);
+            nativeImage = NativeImagePool.acquire(size, size, true);
             for (int x = 0; x < dataSize; x++) {
                 for (int z = 0; z < dataSize; z++) {
                     int chunkX = SectionPos.blockToSectionCoord(tileWorldX) + x;
@@ -46,10 +41,10 @@ public class SlimeChunkLayer extends TileLayer {
                         data[x + z * dataSize] = true;
                         for (int xMove = 0; xMove < 16; xMove++) {
                             for (int zMove = 0; zMove < 16; zMove++) {
-                                if (Thread.currentThread().isInterrupted()) {
+                                if (isGenerationCancelled()) {
                                     this.slimeChunkData = null;
                                     this.image = null;
-                                    nativeImage.close();
+                                    NativeImagePool.release(nativeImage);
                                     return;
                                 }
                                 if (xMove <= 1 || xMove >= 14 || zMove <= 1 || zMove >= 14) {
@@ -74,35 +69,18 @@ public class SlimeChunkLayer extends TileLayer {
         this.image = nativeImage;
     }
 
-    public SlimeChunkLayer(int size, Path imagePath, Path dataPath, int sampleRes) throws Exception {
-        super(size, imagePath, dataPath, sampleRes);
-
-        File dataPathFile = dataPath.toFile();
-        File imagePathFile = imagePath.toFile();
-        if (dataPathFile.exists() && imagePathFile.exists()) {
-            while (!imagePathFile.canRead() || !dataPathFile.canRead()) {
-                Thread.sleep(1);
-            }
-            try {
-                CompoundTag compoundTag = NbtIo.read(dataPathFile);
-                byte[] slimeChunks = compoundTag.getByteArray("slime_chunks");
-                boolean[] slimeChunkData = new boolean[slimeChunks.length];
-                for (int i = 0; i < slimeChunks.length; i++) {
-                    byte slimeChunk = slimeChunks[i];
-                    slimeChunkData[i] = slimeChunk == 1;
-                }
-
-                this.slimeChunkData = slimeChunkData;
-                this.sampleResolution = compoundTag.getInt("res");
-                this.image = NativeImage.read(Files.readAllBytes(imagePath));
-            } catch (IOException e) {
-                throw e;
-            }
-
-        } else {
-            this.slimeChunkData = null;
-            this.image = null;
+    public SlimeChunkLayer(int size, @Nullable NativeImage image, CompoundTag data, int sampleRes) {
+        super(size, image, data, sampleRes);
+        byte[] slimeChunks = data.getByteArray("slime_chunks");
+        boolean[] slimeChunkData = new boolean[slimeChunks.length];
+        for (int i = 0; i < slimeChunks.length; i++) {
+            byte slimeChunk = slimeChunks[i];
+            slimeChunkData[i] = slimeChunk == 1;
         }
+
+        this.slimeChunkData = slimeChunkData;
+        this.sampleResolution = data.getInt("res");
+        this.image = image;
     }
 
     @Override
@@ -4,6 +4,7 @@ package dev.corgitaco.worldviewer.client.tile.tilelayer;
 import com.mojang.blaze3d.platform.NativeImage;
 import dev.corgitaco.worldviewer.client.tile.RenderTileContext;
 import dev.corgitaco.worldviewer.common.storage.DataTileManager;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.LongArraySet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
@@ -18,13 +19,14 @@ import org.jetbrains.annotations.Nullable;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class StructuresLayer extends TileLayer {
 
     @Nullable
     private final Map<Holder<Structure>, LongSet> positionsForStructure;
 
-    public StructuresLayer(DataTileManager tileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, LongSet loadedChunks, @Nullable StructuresLayer lowerResolution) {
+    public StructuresLayer(DataTileManager tileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, int targetSampleResolution, LongSet loadedChunks, @Nullable StructuresLayer lowerResolution) {
         super(tileManager, y, tileWorldX, tileWorldZ, size, sampleResolution, loadedChunks, lowerResolution);
 
         if (size >= 256) {
@@ -32,20 +34,21 @@ public class StructuresLayer extends TileLayer {
             return;
         }
         Map<Holder<Structure>, LongSet> positionsForStructure =  new Reference2ObjectOpenHashMap<>();
-        for (int x = 0; x < SectionPos.blockToSectionCoord(size); x++) {
-            for (int z = 0; z < SectionPos.blockToSectionCoord(size); z++) {
-                int chunkX = SectionPos.blockToSectionCoord(tileWorldX) + x;
-                int chunkZ = SectionPos.blockToSectionCoord(tileWorldZ) + z;
-                if (Thread.currentThread().isInterrupted()) {
-                    this.positionsForStructure = null;
-                    return;
-                }
+        int minChunkX = SectionPos.blockToSectionCoord(tileWorldX);
+        int minChunkZ = SectionPos.blockToSectionCoord(tileWorldZ);
+        int maxChunkX = SectionPos.blockToSectionCoord(tileWorldX + size - 1);
+        int maxChunkZ = SectionPos.blockToSectionCoord(tileWorldZ + size - 1);
 
-                long chunkKey = ChunkPos.asLong(chunkX, chunkZ);
-                loadedChunks.add(chunkKey);
-                for (Holder<Structure> structure : tileManager.getStructures(chunkX, chunkZ)) {
-                    positionsForStructure.computeIfAbsent(structure, configuredStructureFeatureHolder -> new LongArraySet()).add(chunkKey);
-                }
+        for (Long2ObjectMap.Entry<Set<Holder<Structure>>> entry : tileManager.getStructures(minChunkX, minChunkZ, maxChunkX, maxChunkZ).long2ObjectEntrySet()) {
+            if (isGenerationCancelled()) {
+                this.positionsForStructure = null;
+                return;
+            }
+
+            long chunkKey = entry.getLongKey();
+            loadedChunks.add(chunkKey);
+            for (Holder<Structure> structure : entry.getValue()) {
+                positionsForStructure.computeIfAbsent(structure, configuredStructureFeatureHolder -> new LongArraySet()).add(chunkKey);
             }
         }
         this.positionsForStructure = positionsForStructure;
@@ -3,8 +3,13 @@ package dev.corgitaco.worldviewer.client.tile.tilelayer;
 import com.mojang.blaze3d.platform.NativeImage;
 import com.mojang.blaze3d.vertex.VertexConsumer;
 import dev.corgitaco.worldviewer.client.ClientUtil;
+import dev.corgitaco.worldviewer.client.NativeImagePool;
 import dev.corgitaco.worldviewer.client.WVRenderType;
 import dev.corgitaco.worldviewer.client.tile.RenderTileContext;
+import dev.corgitaco.worldviewer.client.tile.TileGenerationExecutor;
+import dev.corgitaco.worldviewer.client.tile.atlas.TextureRegion;
+import dev.corgitaco.worldviewer.client.tile.metrics.TileMetrics;
+import dev.corgitaco.worldviewer.client.tile.storage.TilePayload;
 import dev.corgitaco.worldviewer.common.storage.DataTileManager;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.Util;
@@ -14,10 +19,11 @@ import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.chat.Component;
 import org.jetbrains.annotations.Nullable;
 
-import java.nio.file.Path;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class TileLayer {
 
@@ -33,13 +39,14 @@ public abstract class TileLayer {
         return tileLayers;
     });
     protected int sampleResolution;
+    private final AtomicInteger references = new AtomicInteger(1);
 
 
     public TileLayer(DataTileManager dataTileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, LongSet sampledChunks, @Nullable TileLayer lowerResolution) {
         this.sampleResolution = sampleResolution;
     }
 
-    public TileLayer(int size, Path imagePath, Path dataPath, int sampleResolution) throws Exception {
+    public TileLayer(int size, @Nullable NativeImage image, CompoundTag data, int sampleResolution) {
         this.sampleResolution = sampleResolution;
     }
 
@@ -54,11 +61,43 @@ public abstract class TileLayer {
     @Nullable
     public abstract NativeImage image();
 
+    /**
+     * Called on the render thread before drawing.
+     *
+     * @return the id of a texture this layer keeps up to date itself, or -1 to have the screen tile upload {@link #image()}.
+     */
+    public int textureId() {
+        return -1;
+    }
+
+    /**
+     * @return the width in pixels of what {@link #uploadDisplay} uploads.
+     */
+    public int displayWidth() {
+        return this.image().getWidth();
+    }
+
+    /**
+     * Uploads what this layer shows to the bound texture at the given offset, called on the render thread.
+     */
+    public void uploadDisplay(int xOffset, int yOffset) {
+        NativeImage image = this.image();
+        TileMetrics.recordUpload();
+        image.upload(0, xOffset, yOffset, 0, 0, image.getWidth(), image.getHeight(), false, true, false, false);
+    }
+
     @Nullable
     public CompoundTag tag() {
         return null;
     }
 
+    /**
+     * @return this layer's persisted form with the given {@link #tag()}, the pixels are copied so the image is free to be closed.
+     */
+    public byte[] encode(CompoundTag tag) throws IOException {
+        return TilePayload.encode(this.image(), tag);
+    }
+
     public boolean usesLod() {
         return true;
     }
@@ -71,14 +110,48 @@ public abstract class TileLayer {
         this.sampleResolution = sampleResolution;
     }
 
-    public void close() {
+    /**
+     * Called on the render thread once this layer replaced the previous LOD of its tile on screen.
+     */
+    public void claim() {
+    }
+
+    /**
+     * Adds a reference to this layer and its images, which every holder drops again with {@link #release()}. A new layer starts
+     * with the one reference of whoever made it.
+     *
+     * @throws IllegalStateException if the last reference was already released.
+     */
+    public void retain() {
+        int references;
+        do {
+            references = this.references.get();
+            if (references <= 0) {
+                throw new IllegalStateException("Tile layer was already released.");
+            }
+        } while (!this.references.compareAndSet(references, references + 1));
+    }
+
+    /**
+     * Drops a reference, the thread dropping the last one closes the layer's images.
+     */
+    public void release() {
+        int references = this.references.decrementAndGet();
+        if (references == 0) {
+            close();
+        } else if (references < 0) {
+            throw new IllegalStateException("Tile layer was released more often than it was retained.");
+        }
+    }
+
+    protected void close() {
         if (this.image() != null) {
-            this.image().close();
+            NativeImagePool.release(this.image());
         }
     }
 
     public static NativeImage makeNativeImageFromColorData(int[][] data) {
-        NativeImage nativeImage = ClientUtil.createImage(data.length, data.length, false);
+        NativeImage nativeImage = NativeImagePool.acquire(data.length, data.length, false);
         for (int x = 0; x < data.length; x++) {
             int[] colorRow = data[x];
             for (int y = 0; y < colorRow.length; y++) {
@@ -90,27 +163,31 @@ public abstract class TileLayer {
     }
 
     public Renderer renderer() {
-        return (graphics, size1, id, opacity, renderTileContext) -> {
-            VertexConsumer vertexConsumer = graphics.bufferSource().getBuffer(WVRenderType.WORLD_VIEWER_GUI.apply(id, RenderType.NO_TRANSPARENCY));
-            ClientUtil.blit(vertexConsumer, graphics.pose(), opacity, 0, 0, 0F, 0F, size1, size1, size1, size1);
+        return (graphics, size1, texture, opacity, renderTileContext) -> {
+            VertexConsumer vertexConsumer = graphics.bufferSource().getBuffer(texture.renderType(WVRenderType.WORLD_VIEWER_GUI, RenderType.NO_TRANSPARENCY));
+            ClientUtil.blitRegion(vertexConsumer, graphics.pose(), opacity, 0, 0, size1, size1, texture);
         };
     }
 
     public abstract boolean isComplete();
 
+    protected static boolean isGenerationCancelled() {
+        return Thread.currentThread().isInterrupted() || TileGenerationExecutor.isCurrentTaskCancelled();
+    }
+
     @FunctionalInterface
     public interface GenerationFactory<T> {
-        T make(DataTileManager tileManager, int scrollWorldY, int tileWorldX, int tileWorldZ, int size, int sampleResolution, LongSet sampledDataChunks, T tileLayer);
+        T make(DataTileManager tileManager, int scrollWorldY, int tileWorldX, int tileWorldZ, int size, int sampleResolution, int targetSampleResolution, LongSet sampledDataChunks, T tileLayer);
     }
 
     public interface DiskFactory {
-        TileLayer fromDisk(int size,  Path imagePath, Path dataPath, int sampleResolution) throws Exception;
+        TileLayer fromDisk(int size, @Nullable NativeImage image, CompoundTag data, int sampleResolution) throws Exception;
     }
 
     @FunctionalInterface
     public interface Renderer {
 
-        void render(GuiGraphics graphics, int size, int id, float opacity, RenderTileContext renderTileContext);
+        void render(GuiGraphics graphics, int size, TextureRegion texture, float opacity, RenderTileContext renderTileContext);
     }
 
     public record TileLayerRegistryEntry<T extends TileLayer>(String name, float defaultOpacity, GenerationFactory<T> generationFactory, @Nullable DiskFactory diskFactory) {
@@ -1,40 +1,34 @@
 package dev.corgitaco.worldviewer.client.tile.tilelayer;
 
 import com.mojang.blaze3d.platform.NativeImage;
-import dev.corgitaco.worldviewer.client.ClientUtil;
+import dev.corgitaco.worldviewer.client.NativeImagePool;
 import dev.corgitaco.worldviewer.common.storage.DataTileManager;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.client.Minecraft;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.SectionPos;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.NbtIo;
 import net.minecraft.util.FastColor;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraft.world.level.levelgen.Heightmap;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-
 public class TopBlockMapLayer extends TileLayer {
 
     @Nullable
     private final NativeImage image;
 
-    public TopBlockMapLayer(DataTileManager tileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, LongSet sampledChunks, @Nullable TopBlockMapLayer higherResolution) {
+    public TopBlockMapLayer(DataTileManager tileManager, int y, int tileWorldX, int tileWorldZ, int size, int sampleResolution, int targetSampleResolution, LongSet sampledChunks, @Nullable TopBlockMapLayer higherResolution) {
         super(tileManager, y, tileWorldX, tileWorldZ, size, sampleResolution, sampledChunks, higherResolution);
         if (size <= 128) {
-            NativeImage nativeImage = ClientUtil.createImage(size, size, true);
+            NativeImage nativeImage = NativeImagePool.acquire(size, size, true);
             BlockPos.MutableBlockPos mutable = new BlockPos.MutableBlockPos();
             for (int chunkX = 0; chunkX < SectionPos.blockToSectionCoord(size); chunkX++) {
                 for (int chunkZ = 0; chunkZ < SectionPos.blockToSectionCoord(size); chunkZ++) {
-                    if (Thread.currentThread().isInterrupted()) {
+                    if (isGenerationCancelled()) {
                         this.image = null;
-                        nativeImage.close();
+                        NativeImagePool.release(nativeImage);
                         return;
                     }
                     LevelChunk chunk = Minecraft.getInstance().level.getChunkSource().getChunkNow(SectionPos.blockToSectionCoord(tileWorldX) + chunkX, SectionPos.blockToSectionCoord(tileWorldZ) + chunkZ);
@@ -66,26 +60,10 @@ public class TopBlockMapLayer extends TileLayer {
         }
     }
 
-    public TopBlockMapLayer(int size, Path imagePath, Path dataPath, int sampleRes) throws Exception {
-        super(size, imagePath, dataPath, sampleRes);
-        File imagePathFile = imagePath.toFile();
-        File dataPathFile = dataPath.toFile();
-        if (imagePathFile.exists() && dataPathFile.exists()) {
-            while (!imagePathFile.canRead() || !dataPathFile.canRead()) {
-                Thread.sleep(1);
-            }
-
-            try {
-                this.image = NativeImage.read(Files.readAllBytes(imagePath));
-                CompoundTag read = NbtIo.read(dataPathFile);
-
-                this.sampleResolution = read.getInt("res");
-            } catch (IOException e) {
-                throw e;
-            }
-        } else {
-            this.image = null;
-        }
+    public TopBlockMapLayer(int size, @Nullable NativeImage image, CompoundTag data, int sampleRes) {
+        super(size, image, data, sampleRes);
+        this.image = image;
+        this.sampleResolution = data.getInt("res");
     }
 
     @Override
@@ -2,7 +2,6 @@ package dev.corgitaco.worldviewer.common.storage;
 
 
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
-import net.minecraft.Util;
 import net.minecraft.core.Holder;
 import net.minecraft.core.QuartPos;
 import net.minecraft.core.Registry;
@@ -17,22 +16,21 @@ import net.minecraft.world.level.levelgen.Heightmap;
 import net.minecraft.world.level.levelgen.structure.Structure;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Arrays;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class DataTile {
 
     private static final int SIZE = 16;
 
-    private final ConcurrentHashMap<Heightmap.Types, int[]> heights = Util.make(new ConcurrentHashMap<>(), map -> {
-        for (Heightmap.Types value : Heightmap.Types.values()) {
-            int[] heights = new int[SIZE * SIZE];
-            Arrays.fill(heights, Integer.MIN_VALUE);
-            map.put(value, heights);
-        }
-    });
+    private static final Heightmap.Types[] HEIGHTMAP_TYPES = Heightmap.Types.values();
+
+    // Indexed by Heightmap.Types#ordinal and allocated on first sample. Stored relative to the min build height plus one, so a
+    // default (0) entry means unsampled and a racing reader can never mistake a freshly allocated array for real heights.
+    private final short[][] heights = new short[HEIGHTMAP_TYPES.length][];
+    // Heights from the surface estimator, packed the same way. They are never saved, so the disk only holds exact heights.
+    private final short[][] estimatedHeights = new short[HEIGHTMAP_TYPES.length][];
+    private final int minY;
 
     private final OptimizedBiomeStorage biomes;
 
@@ -48,11 +46,22 @@ public class DataTile {
     public DataTile(long pos, DataTileManager tileManager, CompoundTag tag) {
         this.pos = pos;
         this.manager = tileManager;
+        this.minY = tileManager.serverLevel().getMinBuildHeight();
         {
             ListTag list = tag.getList("heights", Tag.TAG_INT_ARRAY);
-            for (int i = 0; i < list.size(); i++) {
-                IntArrayTag intTags = (IntArrayTag) list.get(i);
-                heights.put(Heightmap.Types.values()[i], intTags.getAsIntArray());
+            for (int i = 0; i < Math.min(list.size(), HEIGHTMAP_TYPES.length); i++) {
+                int[] savedHeights = list.getIntArray(i);
+                if (savedHeights.length != SIZE * SIZE) {
+                    continue;
+                }
+                short[] heights = new short[SIZE * SIZE];
+                for (int idx = 0; idx < savedHeights.length; idx++) {
+                    int height = savedHeights[idx];
+                    if (height != Integer.MIN_VALUE) {
+                        heights[idx] = packHeight(height);
+                    }
+                }
+                this.heights[i] = heights;
             }
         }
         {
@@ -79,6 +88,7 @@ public class DataTile {
     public DataTile(long pos, DataTileManager manager) {
         this.pos = pos;
         this.manager = manager;
+        this.minY = manager.serverLevel().getMinBuildHeight();
         this.biomes = new OptimizedBiomeStorage(4);
         this.isSlimeChunk = manager.isSlimeChunkRaw(ChunkPos.getX(pos), ChunkPos.getZ(pos));
     }
@@ -87,26 +97,41 @@ public class DataTile {
         x = x & (SIZE - 1);
         z = z & (SIZE - 1);
 
-        int[] heights = this.heights.get(type);
         int index = getIndex(x, z);
-        if (heights != null || heights.length == 0) {
-            heights = new int[SIZE * SIZE];
-            Arrays.fill(heights, Integer.MIN_VALUE);
-            this.heights.put(type, heights);
+        short[] exact = this.heights[type.ordinal()];
+        if (exact != null && exact[index] != 0) {
+            return unpackHeight(exact[index]);
         }
 
+        boolean estimated = this.manager.isHeightEstimated(type);
+        short[][] byType = estimated ? this.estimatedHeights : this.heights;
+        short[] heights = byType[type.ordinal()];
+        if (heights == null) {
+            heights = new short[SIZE * SIZE];
+            byType[type.ordinal()] = heights;
+        }
 
-        int height = heights[index];
+        short packed = heights[index];
+        if (packed != 0) {
+            return unpackHeight(packed);
+        }
 
-        if (height == Integer.MIN_VALUE) {
-            height = this.manager.getHeightRaw(type, toWorldX(x), toWorldZ(z));
-            heights[index] = height;
+        int height = this.manager.getHeightRaw(type, toWorldX(x), toWorldZ(z));
+        heights[index] = packHeight(height);
+        if (!estimated) {
             needsSaving = true;
         }
-
         return height;
     }
 
+    private short packHeight(int height) {
+        return (short) (height - this.minY + 1);
+    }
+
+    private int unpackHeight(short packed) {
+        return packed + this.minY - 1;
+    }
+
     public Set<Holder<Structure>> structures() {
         if (this.structures == null) {
             needsSaving = true;
@@ -152,7 +177,10 @@ public class DataTile {
 
         compoundTag.put("heights", saveHeights());
         compoundTag.put("biomes", saveBiomes());
-        compoundTag.put("structures", saveStructures());
+        // Only written once computed, an empty list on disk means the chunk has no structures.
+        if (this.structures != null) {
+            compoundTag.put("structures", saveStructures());
+        }
 
         compoundTag.putBoolean("slimes", this.isSlimeChunk);
         return compoundTag;
@@ -178,8 +206,17 @@ public class DataTile {
     @NotNull
     private ListTag saveHeights() {
         ListTag heights = new ListTag();
-        for (Heightmap.Types value : Heightmap.Types.values()) {
-            heights.add(this.heights.containsKey(value) ? new IntArrayTag(this.heights.get(value)) : new IntArrayTag(new int[]{}));
+        for (short[] packedHeights : this.heights) {
+            if (packedHeights == null) {
+                heights.add(new IntArrayTag(new int[]{}));
+                continue;
+            }
+            int[] savedHeights = new int[packedHeights.length];
+            for (int idx = 0; idx < packedHeights.length; idx++) {
+                short packed = packedHeights[idx];
+                savedHeights[idx] = packed == 0 ? Integer.MIN_VALUE : unpackHeight(packed);
+            }
+            heights.add(new IntArrayTag(savedHeights));
         }
         return heights;
     }
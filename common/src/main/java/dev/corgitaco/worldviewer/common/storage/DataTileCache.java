@@ -0,0 +1,278 @@
+package dev.corgitaco.worldviewer.common.storage;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Bounded {@link DataTile} cache using CLOCK (second chance) eviction.
+ * <p>
+ * Positions are striped over {@link #SEGMENTS} independently locked segments, each with its own clock, so samplers on different
+ * generator threads rarely contend. Pinned tiles are skipped by the clock hand, if every slot of a segment is pinned it grows past
+ * its capacity rather than evicting a tile that is still being sampled.
+ * <p>
+ * Evicted tiles are handed to {@code onEvict} after the segment lock is released. Until that returns they are found through
+ * {@link #getEvicting}, so a tile is never read back from disk before its eviction has been saved.
+ */
+public class DataTileCache {
+
+    private static final int SEGMENT_BITS = 5;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final ConcurrentHashMap<Long, DataTile> evicting = new ConcurrentHashMap<>();
+    private final Consumer<DataTile> onEvict;
+
+    public DataTileCache(int capacity, Consumer<DataTile> onEvict) {
+        this.onEvict = onEvict;
+        int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    @Nullable
+    public DataTile get(long pos, boolean pin) {
+        Segment segment = segment(pos);
+        synchronized (segment) {
+            return segment.get(pos, pin);
+        }
+    }
+
+    /**
+     * Inserts the tile unless one is already resident for its position.
+     *
+     * @return the resident tile for the position.
+     */
+    public DataTile putIfAbsent(long pos, DataTile tile, boolean pin) {
+        Segment segment = segment(pos);
+        DataTile resident;
+        DataTile evicted;
+        synchronized (segment) {
+            resident = segment.get(pos, pin);
+            if (resident != null) {
+                return resident;
+            }
+            evicted = segment.insert(pos, tile, pin);
+            if (evicted != null) {
+                // Published before the lock is released, a miss on the evicted position must not reach the disk before it is saved.
+                this.evicting.put(evicted.getPos(), evicted);
+            }
+        }
+        if (evicted != null) {
+            try {
+                this.onEvict.accept(evicted);
+            } finally {
+                this.evicting.remove(evicted.getPos(), evicted);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * @return a tile evicted from the cache whose eviction is still being handled, reinsert it instead of reading the position from
+     * disk.
+     */
+    @Nullable
+    public DataTile getEvicting(long pos) {
+        return this.evicting.get(pos);
+    }
+
+    /**
+     * @return true if the position is resident or still being evicted.
+     */
+    public boolean contains(long pos) {
+        Segment segment = segment(pos);
+        synchronized (segment) {
+            if (segment.slots.containsKey(pos)) {
+                return true;
+            }
+        }
+        return this.evicting.containsKey(pos);
+    }
+
+    public void unpin(long pos) {
+        Segment segment = segment(pos);
+        synchronized (segment) {
+            segment.unpin(pos);
+        }
+    }
+
+    @Nullable
+    public DataTile remove(long pos) {
+        Segment segment = segment(pos);
+        synchronized (segment) {
+            return segment.remove(pos);
+        }
+    }
+
+    public void forEach(Consumer<DataTile> consumer) {
+        for (Segment segment : this.segments) {
+            DataTile[] tiles;
+            synchronized (segment) {
+                tiles = segment.tiles.clone();
+            }
+            for (DataTile tile : tiles) {
+                if (tile != null) {
+                    consumer.accept(tile);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.slots.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Segment segment(long pos) {
+        return this.segments[(int) (HashCommon.mix(pos) >>> (Long.SIZE - SEGMENT_BITS))];
+    }
+
+    /**
+     * One stripe of the cache, every method is called holding its monitor.
+     */
+    private static final class Segment {
+
+        private final Long2IntOpenHashMap slots = new Long2IntOpenHashMap();
+        private final IntArrayList freeSlots = new IntArrayList();
+
+        private long[] positions;
+        private DataTile[] tiles;
+        private boolean[] referenced;
+        private int[] pins;
+
+        private int used;
+        private int hand;
+
+        private Segment(int capacity) {
+            this.positions = new long[capacity];
+            this.tiles = new DataTile[capacity];
+            this.referenced = new boolean[capacity];
+            this.pins = new int[capacity];
+            this.slots.defaultReturnValue(-1);
+        }
+
+        @Nullable
+        private DataTile get(long pos, boolean pin) {
+            int slot = this.slots.get(pos);
+            if (slot == -1) {
+                return null;
+            }
+            this.referenced[slot] = true;
+            if (pin) {
+                this.pins[slot]++;
+            }
+            return this.tiles[slot];
+        }
+
+        /**
+         * @return the tile evicted to make room, if any.
+         */
+        @Nullable
+        private DataTile insert(long pos, DataTile tile, boolean pin) {
+            DataTile evicted = null;
+            int slot;
+            if (!this.freeSlots.isEmpty()) {
+                slot = this.freeSlots.popInt();
+            } else if (this.used < this.tiles.length) {
+                slot = this.used++;
+            } else {
+                slot = findVictim();
+                if (slot == -1) {
+                    grow();
+                    slot = this.used++;
+                } else {
+                    evicted = this.tiles[slot];
+                    this.slots.remove(this.positions[slot]);
+                }
+            }
+
+            this.slots.put(pos, slot);
+            this.positions[slot] = pos;
+            this.tiles[slot] = tile;
+            this.referenced[slot] = true;
+            this.pins[slot] = pin ? 1 : 0;
+            return evicted;
+        }
+
+        private void unpin(long pos) {
+            int slot = this.slots.get(pos);
+            if (slot != -1 && this.pins[slot] > 0) {
+                this.pins[slot]--;
+            }
+        }
+
+        @Nullable
+        private DataTile remove(long pos) {
+            int slot = this.slots.remove(pos);
+            if (slot == -1) {
+                return null;
+            }
+            DataTile tile = this.tiles[slot];
+            this.tiles[slot] = null;
+            this.pins[slot] = 0;
+            this.referenced[slot] = false;
+            this.freeSlots.add(slot);
+            return tile;
+        }
+
+        private void clear() {
+            this.slots.clear();
+            this.freeSlots.clear();
+            Arrays.fill(this.tiles, null);
+            Arrays.fill(this.referenced, false);
+            Arrays.fill(this.pins, 0);
+            this.used = 0;
+            this.hand = 0;
+        }
+
+        /**
+         * @return the slot of an unpinned tile to evict, or -1 if every slot is pinned.
+         */
+        private int findVictim() {
+            int length = this.tiles.length;
+            // Two sweeps: the first clears reference bits, the second is guaranteed to find an unpinned victim if there is one.
+            for (int i = 0; i < length * 2; i++) {
+                int slot = this.hand;
+                this.hand = (this.hand + 1) % length;
+
+                if (this.pins[slot] > 0) {
+                    continue;
+                }
+                if (this.referenced[slot]) {
+                    this.referenced[slot] = false;
+                    continue;
+                }
+                return slot;
+            }
+            return -1;
+        }
+
+        private void grow() {
+            int newLength = this.tiles.length << 1;
+            this.positions = Arrays.copyOf(this.positions, newLength);
+            this.tiles = Arrays.copyOf(this.tiles, newLength);
+            this.referenced = Arrays.copyOf(this.referenced, newLength);
+            this.pins = Arrays.copyOf(this.pins, newLength);
+        }
+    }
+}
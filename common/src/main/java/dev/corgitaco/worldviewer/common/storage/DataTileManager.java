@@ -3,14 +3,20 @@ package dev.corgitaco.worldviewer.common.storage;
 
 import dev.corgitaco.worldviewer.client.tile.RenderTileManager;
 import dev.corgitaco.worldviewer.common.WorldViewer;
+import dev.corgitaco.worldviewer.common.worldgen.CaveColumnSampler;
+import dev.corgitaco.worldviewer.common.worldgen.DensityGridSampler;
+import dev.corgitaco.worldviewer.common.worldgen.SurfaceHeightEstimator;
 import dev.corgitaco.worldviewer.mixin.IOWorkerAccessor;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import net.daporkchop.lib.primitive.map.concurrent.LongObjConcurrentHashMap;
 import net.minecraft.core.Holder;
 import net.minecraft.core.QuartPos;
-import net.minecraft.core.RegistryAccess;
 import net.minecraft.core.SectionPos;
-import net.minecraft.core.registries.Registries;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.ChunkPos;
@@ -33,22 +39,40 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 public class DataTileManager {
 
     private static final ExecutorService SAVE_THREAD = RenderTileManager.createExecutor(1, "Worker-Data-Tile-Saver-IO");
 
-    private final LongObjConcurrentHashMap<DataTile> dataTiles = new LongObjConcurrentHashMap<>();
+    private static final Map<Path, IOWorker> IO_WORKERS = new ConcurrentHashMap<>();
+
+    private static final int MAX_CACHED_TILES = 16384;
+
+    private final DataTileCache dataTiles = new DataTileCache(MAX_CACHED_TILES, this::saveIfNeeded);
+    private final ThreadLocal<LongSet> pinnedTiles = new ThreadLocal<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongObjConcurrentHashMap<CompletableFuture<Optional<CompoundTag>>> pendingLoads = new LongObjConcurrentHashMap<>();
     private final Path saveDir;
     private final ChunkGenerator generator;
     private final BiomeSource source;
     private final ServerLevel serverLevel;
 
-    private static IOWorker ioWorker;
+    private final IOWorker ioWorker;
+    private final StructurePlacementIndex structurePlacementIndex;
+    @Nullable
+    private final CaveColumnSampler caveColumnSampler;
+    @Nullable
+    private final DensityGridSampler densityGridSampler;
+    @Nullable
+    private final SurfaceHeightEstimator surfaceHeightEstimator;
 
     private long worldSeed;
 
@@ -59,6 +83,10 @@ public class DataTileManager {
         this.source = source;
         this.serverLevel = serverLevel;
         this.worldSeed = worldSeed;
+        this.structurePlacementIndex = new StructurePlacementIndex(serverLevel.getChunkSource().getGeneratorState());
+        this.caveColumnSampler = CaveColumnSampler.create(serverLevel);
+        this.densityGridSampler = DensityGridSampler.create(serverLevel);
+        this.surfaceHeightEstimator = SurfaceHeightEstimator.create(serverLevel);
         File saveDirAsFile = saveDir.toFile();
 
         if (!saveDirAsFile.exists()) {
@@ -73,16 +101,41 @@ public class DataTileManager {
             throw new IllegalArgumentException("Path must be a directory");
         }
 
-        if (ioWorker == null) {
-            ioWorker = IOWorkerAccessor.makeStorage(saveDir, true, "data_tiles");
-        }
+        // Workers are shared per directory so reopening the screen never races a still flushing worker over the same region files.
+        this.ioWorker = IO_WORKERS.computeIfAbsent(saveDir, dir -> IOWorkerAccessor.makeStorage(dir, false, "data_tiles"));
     }
 
     public ServerLevel serverLevel() {
         return serverLevel;
     }
 
+    /**
+     * @return the batched cave sampler, or null if the generator is not noise based.
+     */
+    @Nullable
+    public CaveColumnSampler caveColumnSampler() {
+        return this.caveColumnSampler;
+    }
+
+    /**
+     * @return the density grid estimator, or null if it is disabled or the generator is not noise based.
+     */
+    @Nullable
+    public DensityGridSampler densityGridSampler() {
+        return this.densityGridSampler;
+    }
+
+    /**
+     * @return whether {@link #getHeightRaw} estimates heights of this type instead of computing them exactly.
+     */
+    public boolean isHeightEstimated(Heightmap.Types types) {
+        return this.surfaceHeightEstimator != null && (types == Heightmap.Types.OCEAN_FLOOR || types == Heightmap.Types.OCEAN_FLOOR_WG);
+    }
+
     public int getHeightRaw(Heightmap.Types types, int blockX, int blockZ) {
+        if (isHeightEstimated(types)) {
+            return this.surfaceHeightEstimator.estimateOceanFloor(blockX, blockZ);
+        }
         return this.generator.getBaseHeight(blockX, blockZ, types, this.serverLevel, this.serverLevel.getChunkSource().randomState());
     }
 
@@ -111,56 +164,68 @@ public class DataTileManager {
     }
 
 
-    public Set<Holder<Structure>> getStructuresRaw(long chunkKey) {
+    /**
+     * Structures starting in the given chunk rectangle (inclusive), keyed by chunk. Only candidate chunks from the placement index are
+     * looked up, chunks without structures are absent from the result.
+     */
+    public Long2ObjectMap<Set<Holder<Structure>>> getStructures(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        LongSet candidates = new LongOpenHashSet();
+        this.structurePlacementIndex.forEachCandidate(minChunkX, minChunkZ, maxChunkX, maxChunkZ, (structureSet, chunkX, chunkZ) -> candidates.add(ChunkPos.asLong(chunkX, chunkZ)));
+
+        Long2ObjectMap<Set<Holder<Structure>>> structures = new Long2ObjectOpenHashMap<>();
+        for (LongIterator iterator = candidates.iterator(); iterator.hasNext(); ) {
+            long chunkKey = iterator.nextLong();
+            Set<Holder<Structure>> chunkStructures = getTile(chunkKey).structures();
+            if (!chunkStructures.isEmpty()) {
+                structures.put(chunkKey, chunkStructures);
+            }
+        }
+        return structures;
+    }
 
+    public Set<Holder<Structure>> getStructuresRaw(long chunkKey) {
         int chunkX = ChunkPos.getX(chunkKey);
         int chunkZ = ChunkPos.getZ(chunkKey);
 
         ObjectOpenHashSet<Holder<Structure>> structures = new ObjectOpenHashSet<>();
+        WorldgenRandom worldgenrandom = new WorldgenRandom(new LegacyRandomSource(0L));
 
-        RegistryAccess registryAccess = serverLevel.registryAccess();
-        for (Holder<StructureSet> structureSetHolder : registryAccess.registryOrThrow(Registries.STRUCTURE_SET).asHolderIdMap()) {
-
+        this.structurePlacementIndex.forEachCandidate(chunkX, chunkZ, chunkX, chunkZ, (structureSetHolder, candidateX, candidateZ) -> {
             StructureSet structureSet = structureSetHolder.value();
+            worldgenrandom.setLargeFeatureSeed(serverLevel.getSeed(), chunkX, chunkZ);
+            List<StructureSet.StructureSelectionEntry> arraylist = new ArrayList<>(structureSet.structures());
 
-            if (structureSet.placement().isStructureChunk(this.serverLevel.getChunkSource().chunkMap.generatorState(), chunkX, chunkZ)) {
-                WorldgenRandom worldgenrandom = new WorldgenRandom(new LegacyRandomSource(0L));
-                worldgenrandom.setLargeFeatureSeed(serverLevel.getSeed(), chunkX, chunkZ);
-                List<StructureSet.StructureSelectionEntry> arraylist = new ArrayList<>(structureSet.structures());
-
-                int i = 0;
-
-                for (StructureSet.StructureSelectionEntry structureset$structureselectionentry1 : arraylist) {
-                    i += structureset$structureselectionentry1.weight();
-                }
-
-                while (!arraylist.isEmpty()) {
-                    int j = worldgenrandom.nextInt(i);
-                    int k = 0;
+            int i = 0;
 
-                    for (StructureSet.StructureSelectionEntry structureset$structureselectionentry2 : arraylist) {
-                        j -= structureset$structureselectionentry2.weight();
-                        if (j < 0) {
-                            break;
-                        }
+            for (StructureSet.StructureSelectionEntry structureset$structureselectionentry1 : arraylist) {
+                i += structureset$structureselectionentry1.weight();
+            }
 
-                        ++k;
-                    }
+            while (!arraylist.isEmpty()) {
+                int j = worldgenrandom.nextInt(i);
+                int k = 0;
 
-                    StructureSet.StructureSelectionEntry structureset$structureselectionentry3 = arraylist.get(k);
-                    Holder<Structure> configuredStructureFeatureHolder = structureset$structureselectionentry3.structure();
-                    Structure value = configuredStructureFeatureHolder.value();
-                    if (canCreate(serverLevel, generator, chunkX, chunkZ, value)) {
-                        structures.add(configuredStructureFeatureHolder);
+                for (StructureSet.StructureSelectionEntry structureset$structureselectionentry2 : arraylist) {
+                    j -= structureset$structureselectionentry2.weight();
+                    if (j < 0) {
                         break;
                     }
 
-                    arraylist.remove(k);
-                    i -= structureset$structureselectionentry3.weight();
+                    ++k;
+                }
+
+                StructureSet.StructureSelectionEntry structureset$structureselectionentry3 = arraylist.get(k);
+                Holder<Structure> configuredStructureFeatureHolder = structureset$structureselectionentry3.structure();
+                Structure value = configuredStructureFeatureHolder.value();
+                if (canCreate(serverLevel, generator, chunkX, chunkZ, value)) {
+                    structures.add(configuredStructureFeatureHolder);
+                    break;
                 }
 
+                arraylist.remove(k);
+                i -= structureset$structureselectionentry3.weight();
             }
-        }
+        });
         return structures;
     }
 
@@ -178,23 +243,100 @@ public class DataTileManager {
     }
 
     public DataTile getTile(long pos) {
-        DataTile value = this.dataTiles.get(pos);
+        LongSet pinned = this.pinnedTiles.get();
+        boolean pin = pinned != null && !pinned.contains(pos);
 
+        DataTile value = this.dataTiles.get(pos, pin);
         if (value == null) {
+            this.cacheMisses.increment();
+            DataTile evicting = this.dataTiles.getEvicting(pos);
+            value = this.dataTiles.putIfAbsent(pos, evicting != null ? evicting : loadTile(pos), pin);
+        } else {
+            this.cacheHits.increment();
+        }
+
+        if (pin) {
+            pinned.add(pos);
+        }
+        return value;
+    }
+
+    public long cacheHits() {
+        return this.cacheHits.sum();
+    }
+
+    public long cacheMisses() {
+        return this.cacheMisses.sum();
+    }
+
+    /**
+     * Runs the sampler with every tile it touches on this thread pinned in the cache, so overlapping samples are never evicted mid-pass.
+     */
+    public <T> T sample(Supplier<T> sampler) {
+        LongSet previous = this.pinnedTiles.get();
+        LongSet pinned = new LongOpenHashSet();
+        this.pinnedTiles.set(pinned);
+        try {
+            return sampler.get();
+        } finally {
+            this.pinnedTiles.set(previous);
+            for (LongIterator iterator = pinned.iterator(); iterator.hasNext(); ) {
+                this.dataTiles.unpin(iterator.nextLong());
+            }
+        }
+    }
+
+    private DataTile loadTile(long pos) {
+        try {
+            CompletableFuture<Optional<CompoundTag>> load = this.pendingLoads.get(pos);
+            if (load == null) {
+                load = this.ioWorker.loadAsync(new ChunkPos(pos));
+            }
+            CompoundTag read = load.join().orElse(null);
+            if (read != null) {
+                return new DataTile(pos, this, read);
+            }
+        } catch (Exception e) {
+            WorldViewer.LOGGER.error("Couldn't read file for tile [%s, %s]. ".formatted(ChunkPos.getX(pos), ChunkPos.getZ(pos)) + e.getMessage());
+        }
+        return new DataTile(pos, this);
+    }
+
+    /**
+     * Starts async disk reads for every chunk a tile samples at the given resolution so generation finds them resident.
+     */
+    public void prefetch(int minBlockX, int minBlockZ, int size, int sampleResolution) {
+        int minChunkX = SectionPos.blockToSectionCoord(minBlockX);
+        int minChunkZ = SectionPos.blockToSectionCoord(minBlockZ);
+        int maxChunkX = SectionPos.blockToSectionCoord(minBlockX + size - 1);
+        int maxChunkZ = SectionPos.blockToSectionCoord(minBlockZ + size - 1);
+        int step = Math.max(1, SectionPos.blockToSectionCoord(sampleResolution));
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX += step) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ += step) {
+                prefetch(ChunkPos.asLong(chunkX, chunkZ));
+            }
+        }
+    }
+
+    public void prefetch(long pos) {
+        if (this.dataTiles.contains(pos) || this.pendingLoads.get(pos) != null) {
+            return;
+        }
+
+        CompletableFuture<Optional<CompoundTag>> load = this.ioWorker.loadAsync(new ChunkPos(pos));
+        this.pendingLoads.put(pos, load);
+        load.whenCompleteAsync((read, throwable) -> {
             try {
-                CompoundTag read = null; //ioWorker.load(new ChunkPos(pos));
-                if (read == null) {
-                    value = new DataTile(pos, this);
-                } else {
-                    value = new DataTile(pos, this, read);
+                if (throwable == null && read.isPresent() && !this.dataTiles.contains(pos)) {
+                    this.dataTiles.putIfAbsent(pos, new DataTile(pos, this, read.get()), false);
                 }
             } catch (Exception e) {
                 WorldViewer.LOGGER.error("Couldn't read file for tile [%s, %s]. ".formatted(ChunkPos.getX(pos), ChunkPos.getZ(pos)) + e.getMessage());
-                value = new DataTile(pos, this);
+            } finally {
+                this.pendingLoads.remove(pos);
             }
-            this.dataTiles.put(pos, value);
-        }
-        return value;
+        }, SAVE_THREAD);
     }
 
     public void unloadTileFromWorldCoords(int blockX, int blockZ) {
@@ -208,33 +350,33 @@ public class DataTileManager {
     public void unloadTile(long pos) {
         @Nullable DataTile remove = this.dataTiles.remove(pos);
         if (remove != null) {
-            if (remove.isNeedsSaving()) {
-//                save(remove);
-            }
-        } else {
-//            throw new RuntimeException("Trying to unloading tile that doesnt exist.");
+            saveIfNeeded(remove);
+        }
+    }
+
+    private void saveIfNeeded(@NotNull DataTile tile) {
+        if (tile.isNeedsSaving()) {
+            save(tile);
         }
     }
 
     private void save(@NotNull DataTile toSave) {
+        toSave.setNeedsSaving(false);
         CompoundTag save = toSave.save();
         long pos = toSave.getPos();
-        ioWorker.store(new ChunkPos(pos), save);
+        this.ioWorker.store(new ChunkPos(pos), save);
     }
 
     public void saveAllTiles(boolean closeWorker) {
-        this.dataTiles.forEach((pos, value) -> {
-            if (value.isNeedsSaving()) {
-                save(value);
-            }
-        });
-        // TODO: This is probably wrong, but we need to NOT block render thread when closing/saving all chunks bc it freezes the game.
+        this.dataTiles.forEach(this::saveIfNeeded);
+        // Stores are queued on the worker's own thread, flushing is pushed off thread as well so closing never freezes the render thread.
         CompletableFuture.runAsync(() -> {
-            ioWorker.synchronize(true).join();
+            this.ioWorker.synchronize(closeWorker).join();
         }, SAVE_THREAD);
     }
 
     public void close() {
-//        saveAllTiles(true);
+        saveAllTiles(true);
+        this.dataTiles.clear();
     }
 }
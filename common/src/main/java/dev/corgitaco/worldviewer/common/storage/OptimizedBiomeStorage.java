@@ -1,5 +1,6 @@
 package dev.corgitaco.worldviewer.common.storage;
 
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import net.minecraft.core.Holder;
 import net.minecraft.core.Registry;
 import net.minecraft.core.registries.Registries;
@@ -8,47 +9,75 @@ import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.StringTag;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.Mth;
+import net.minecraft.util.SimpleBitStorage;
 import net.minecraft.world.level.biome.Biome;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
 
+/**
+ * Paletted biome grid, bit-packed at the minimum width for the current palette like vanilla's PalettedContainer.
+ * <p>
+ * Stored values are palette index + 1, 0 marks a cell that has not been sampled yet.
+ * <p>
+ * Reads take no lock: the storage and the palette its values index are published together as one {@link Snapshot}. Growing the
+ * palette always publishes a copy of the storage, so the storage of a snapshot only ever holds indices of its own palette.
+ */
 public class OptimizedBiomeStorage {
 
-    public final int[] values;
     private final int size;
 
-    private Holder<Biome>[] lookUp;
+    private volatile Snapshot snapshot;
+    // Guarded by this, as is every write to the current snapshot's storage.
+    private final Reference2IntOpenHashMap<Holder<Biome>> paletteIds = new Reference2IntOpenHashMap<>();
 
 
-    @SuppressWarnings("unchecked")
     public OptimizedBiomeStorage(CompoundTag tag, Registry<Biome> biomeRegistry) {
-        this.values = tag.getIntArray("values");
-
-        this.lookUp = tag.getList("lookup", CompoundTag.TAG_STRING).stream().map(tag1 -> (StringTag) tag1).map(StringTag::getAsString).map(ResourceLocation::new)
-                .map(location -> ResourceKey.create(Registries.BIOME, location)).map(biomeRegistry::getHolderOrThrow).toArray(Holder[]::new);
+        this(tag.getIntArray("values"), readLookUp(tag, biomeRegistry));
+    }
 
-        this.size = (int) Math.sqrt(this.values.length);
+    private OptimizedBiomeStorage(int[] values, Holder<Biome>[] lookUp) {
+        this(values, lookUp, (int) Math.sqrt(values.length));
     }
 
     public OptimizedBiomeStorage(int[] values, Holder<Biome>[] lookUp, int size) {
-        this.values = values;
-        this.lookUp = lookUp;
         this.size = size;
+        this.paletteIds.defaultReturnValue(-1);
+        for (int i = 0; i < lookUp.length; i++) {
+            this.paletteIds.put(lookUp[i], i);
+        }
+
+        SimpleBitStorage storage = new SimpleBitStorage(bitsFor(lookUp.length), size * size);
+        for (int i = 0; i < Math.min(values.length, storage.getSize()); i++) {
+            int value = values[i];
+            if (value >= 0 && value < lookUp.length) {
+                storage.set(i, value + 1);
+            }
+        }
+        this.snapshot = new Snapshot(storage, lookUp.clone());
     }
 
+    @SuppressWarnings("unchecked")
     public OptimizedBiomeStorage(int size) {
-        this(new int[size * size], new Holder[0], size);
-        Arrays.fill(values, -1);
+        this.size = size;
+        this.paletteIds.defaultReturnValue(-1);
+        this.snapshot = new Snapshot(new SimpleBitStorage(bitsFor(0), size * size), new Holder[0]);
     }
 
     public CompoundTag save() {
         CompoundTag compoundTag = new CompoundTag();
-        compoundTag.putIntArray("values", this.values);
+        Snapshot snapshot = this.snapshot;
+        SimpleBitStorage storage = snapshot.values();
+        int[] values = new int[storage.getSize()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = storage.get(i) - 1;
+        }
+        compoundTag.putIntArray("values", values);
 
         ListTag tag = new ListTag();
-        for (Holder<Biome> biomeHolder : this.lookUp) {
-            tag.add(StringTag.valueOf(biomeHolder.unwrapKey().orElseThrow().location().toString()));
+        for (Holder<Biome> biome : snapshot.lookUp()) {
+            tag.add(StringTag.valueOf(biome.unwrapKey().orElseThrow().location().toString()));
         }
 
         compoundTag.put("lookup", tag);
@@ -62,24 +91,19 @@ public class OptimizedBiomeStorage {
 
         if (biome == null) {
             Holder<Biome> holder = getter.get(worldX, worldZ);
-
-            int lookupIdx = -1;
-            Holder<Biome>[] up = this.lookUp;
-            for (int i = 0; i < up.length; i++) {
-                Holder<Biome> biomeHolder = up[i];
-                if (biomeHolder == holder) {
-                    lookupIdx = i;
-                    break;
-                }
+            if (holder == null) {
+                return null;
             }
 
-            if (lookupIdx == -1) {
-                this.lookUp = Arrays.copyOf(this.lookUp, this.lookUp.length + 1);
-                this.lookUp[this.lookUp.length - 1] = holder;
-                lookupIdx = this.lookUp.length - 1;
+            synchronized (this) {
+                Snapshot snapshot = this.snapshot;
+                int lookupIdx = this.paletteIds.getInt(holder);
+                if (lookupIdx == -1) {
+                    lookupIdx = snapshot.lookUp().length;
+                    snapshot = addToPalette(snapshot, holder);
+                }
+                snapshot.values().set(getIndex(storageQuartX, storageQuartZ), lookupIdx + 1);
             }
-
-            values[getIndex(storageQuartX, storageQuartZ)] = lookupIdx;
             biome = holder;
         }
 
@@ -88,20 +112,59 @@ public class OptimizedBiomeStorage {
 
     @Nullable
     public Holder<Biome> getBiomeRaw(int x, int z) {
-        int value = values[getIndex(x, z)];
-        if (value == -1) {
+        Snapshot snapshot = this.snapshot;
+        int value = snapshot.values().get(getIndex(x, z));
+        if (value == 0) {
             return null;
         }
-        return this.lookUp[value];
+        return snapshot.lookUp()[value - 1];
+    }
+
+    /**
+     * Publishes a snapshot whose palette ends with {@code holder}, over a copy of the storage widened as needed.
+     */
+    private Snapshot addToPalette(Snapshot snapshot, Holder<Biome> holder) {
+        Holder<Biome>[] lookUp = Arrays.copyOf(snapshot.lookUp(), snapshot.lookUp().length + 1);
+        lookUp[lookUp.length - 1] = holder;
+
+        SimpleBitStorage storage = snapshot.values();
+        int bits = bitsFor(lookUp.length);
+        SimpleBitStorage copy;
+        if (bits == storage.getBits()) {
+            copy = new SimpleBitStorage(bits, storage.getSize(), storage.getRaw().clone());
+        } else {
+            copy = new SimpleBitStorage(bits, storage.getSize());
+            for (int i = 0; i < storage.getSize(); i++) {
+                copy.set(i, storage.get(i));
+            }
+        }
+
+        this.paletteIds.put(holder, lookUp.length - 1);
+        Snapshot grown = new Snapshot(copy, lookUp);
+        this.snapshot = grown;
+        return grown;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Holder<Biome>[] readLookUp(CompoundTag tag, Registry<Biome> biomeRegistry) {
+        return tag.getList("lookup", CompoundTag.TAG_STRING).stream().map(tag1 -> (StringTag) tag1).map(StringTag::getAsString).map(ResourceLocation::new)
+                .map(location -> ResourceKey.create(Registries.BIOME, location)).map(biomeRegistry::getHolderOrThrow).toArray(Holder[]::new);
+    }
+
+    private static int bitsFor(int paletteSize) {
+        return Math.max(1, Mth.ceillog2(paletteSize + 1));
     }
 
     private int getIndex(int x, int z) {
         return x + z * (this.size);
     }
 
+    private record Snapshot(SimpleBitStorage values, Holder<Biome>[] lookUp) {
+    }
+
     @FunctionalInterface
     public interface BiomeGetter {
 
         Holder<Biome> get(int worldX, int worldZ);
     }
-}
\ No newline at end of file
+}
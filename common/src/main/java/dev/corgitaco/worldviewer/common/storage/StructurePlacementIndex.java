@@ -0,0 +1,126 @@
+package dev.corgitaco.worldviewer.common.storage;
+
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.ChunkGeneratorStructureState;
+import net.minecraft.world.level.levelgen.structure.StructureSet;
+import net.minecraft.world.level.levelgen.structure.placement.ConcentricRingsStructurePlacement;
+import net.minecraft.world.level.levelgen.structure.placement.RandomSpreadStructurePlacement;
+import net.minecraft.world.level.levelgen.structure.placement.StructurePlacement;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Enumerates structure start candidates for a chunk rectangle directly from each {@link StructureSet}'s placement.
+ * <p>
+ * Random spread placements yield at most one candidate per spacing region and concentric rings only their precomputed ring
+ * positions, so a query costs regions + hits instead of chunks * structure sets. Unknown (modded) placements fall back to
+ * testing every chunk in the rectangle.
+ */
+public class StructurePlacementIndex {
+
+    private final ChunkGeneratorStructureState state;
+
+    private final List<Holder<StructureSet>> randomSpread = new ArrayList<>();
+    private final List<RingPlacement> concentricRings = new ArrayList<>();
+    private final List<Holder<StructureSet>> other = new ArrayList<>();
+
+    public StructurePlacementIndex(ChunkGeneratorStructureState state) {
+        this.state = state;
+        for (Holder<StructureSet> structureSet : state.possibleStructureSets()) {
+            StructurePlacement placement = structureSet.value().placement();
+            if (placement instanceof RandomSpreadStructurePlacement) {
+                this.randomSpread.add(structureSet);
+            } else if (placement instanceof ConcentricRingsStructurePlacement) {
+                this.concentricRings.add(new RingPlacement(structureSet));
+            } else {
+                this.other.add(structureSet);
+            }
+        }
+    }
+
+    public void forEachCandidate(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, CandidateConsumer consumer) {
+        long seed = this.state.getLevelSeed();
+        for (Holder<StructureSet> structureSet : this.randomSpread) {
+            RandomSpreadStructurePlacement placement = (RandomSpreadStructurePlacement) structureSet.value().placement();
+            int spacing = placement.spacing();
+
+            int minRegionX = Math.floorDiv(minChunkX, spacing);
+            int maxRegionX = Math.floorDiv(maxChunkX, spacing);
+            int minRegionZ = Math.floorDiv(minChunkZ, spacing);
+            int maxRegionZ = Math.floorDiv(maxChunkZ, spacing);
+
+            for (int regionX = minRegionX; regionX <= maxRegionX; regionX++) {
+                for (int regionZ = minRegionZ; regionZ <= maxRegionZ; regionZ++) {
+                    ChunkPos candidate = placement.getPotentialStructureChunk(seed, regionX * spacing, regionZ * spacing);
+                    if (contains(minChunkX, minChunkZ, maxChunkX, maxChunkZ, candidate.x, candidate.z) && placement.isStructureChunk(this.state, candidate.x, candidate.z)) {
+                        consumer.accept(structureSet, candidate.x, candidate.z);
+                    }
+                }
+            }
+        }
+
+        for (RingPlacement ringPlacement : this.concentricRings) {
+            long[] positions = ringPlacement.positions(this.state);
+            StructurePlacement placement = ringPlacement.structureSet.value().placement();
+            for (long position : positions) {
+                int chunkX = ChunkPos.getX(position);
+                int chunkZ = ChunkPos.getZ(position);
+                if (contains(minChunkX, minChunkZ, maxChunkX, maxChunkZ, chunkX, chunkZ) && placement.isStructureChunk(this.state, chunkX, chunkZ)) {
+                    consumer.accept(ringPlacement.structureSet, chunkX, chunkZ);
+                }
+            }
+        }
+
+        for (Holder<StructureSet> structureSet : this.other) {
+            StructurePlacement placement = structureSet.value().placement();
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                    if (placement.isStructureChunk(this.state, chunkX, chunkZ)) {
+                        consumer.accept(structureSet, chunkX, chunkZ);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean contains(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int chunkX, int chunkZ) {
+        return chunkX >= minChunkX && chunkX <= maxChunkX && chunkZ >= minChunkZ && chunkZ <= maxChunkZ;
+    }
+
+    private static final class RingPlacement {
+        private final Holder<StructureSet> structureSet;
+
+        @Nullable
+        private volatile long[] positions;
+
+        private RingPlacement(Holder<StructureSet> structureSet) {
+            this.structureSet = structureSet;
+        }
+
+        private long[] positions(ChunkGeneratorStructureState state) {
+            long[] positions = this.positions;
+            if (positions == null) {
+                // Blocks until vanilla has finished generating the rings, this only happens once per placement.
+                List<ChunkPos> ringPositions = state.getRingPositionsFor((ConcentricRingsStructurePlacement) this.structureSet.value().placement());
+                if (ringPositions == null) {
+                    positions = new long[0];
+                } else {
+                    positions = new long[ringPositions.size()];
+                    for (int i = 0; i < positions.length; i++) {
+                        positions[i] = ringPositions.get(i).toLong();
+                    }
+                }
+                this.positions = positions;
+            }
+            return positions;
+        }
+    }
+
+    @FunctionalInterface
+    public interface CandidateConsumer {
+        void accept(Holder<StructureSet> structureSet, int chunkX, int chunkZ);
+    }
+}
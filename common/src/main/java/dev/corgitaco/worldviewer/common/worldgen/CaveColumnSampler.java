@@ -0,0 +1,152 @@
+package dev.corgitaco.worldviewer.common.worldgen;
+
+import dev.corgitaco.worldviewer.mixin.NoiseBasedChunkGeneratorAccessor;
+import dev.corgitaco.worldviewer.mixin.NoiseChunkAccessor;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.FluidTags;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.Aquifer;
+import net.minecraft.world.level.levelgen.DensityFunctions;
+import net.minecraft.world.level.levelgen.NoiseBasedChunkGenerator;
+import net.minecraft.world.level.levelgen.NoiseChunk;
+import net.minecraft.world.level.levelgen.NoiseGeneratorSettings;
+import net.minecraft.world.level.levelgen.NoiseSettings;
+import net.minecraft.world.level.levelgen.RandomState;
+import net.minecraft.world.level.levelgen.blending.Blender;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Counts cave (air or lava) blocks for a whole grid of sample columns at once.
+ * <p>
+ * {@link NoiseBasedChunkGenerator#getBaseColumn} builds a fresh {@link NoiseChunk} per column and interpolates the entire build
+ * height. Here columns are grouped into chunk sized batches that share one {@link NoiseChunk}, so cell corners and flat caches are
+ * computed once per batch, and only the cells overlapping the requested Y range are interpolated. Once samples are at least a chunk
+ * apart each column gets a single cell noise chunk, which is what vanilla builds anyway.
+ */
+public class CaveColumnSampler {
+
+    private static final int BATCH_BLOCKS = 16;
+
+    private final RandomState randomState;
+    private final NoiseGeneratorSettings settings;
+    private final NoiseSettings noiseSettings;
+    private final Aquifer.FluidPicker fluidPicker;
+
+    private CaveColumnSampler(ServerLevel level, NoiseBasedChunkGenerator generator) {
+        this.randomState = level.getChunkSource().randomState();
+        this.settings = generator.generatorSettings().value();
+        this.noiseSettings = this.settings.noiseSettings().clampToHeightAccessor(level);
+        this.fluidPicker = ((NoiseBasedChunkGeneratorAccessor) generator).wvGetGlobalFluidPicker().get();
+    }
+
+    @Nullable
+    public static CaveColumnSampler create(ServerLevel level) {
+        if (level.getChunkSource().getGenerator() instanceof NoiseBasedChunkGenerator noiseBasedChunkGenerator) {
+            return new CaveColumnSampler(level, noiseBasedChunkGenerator);
+        }
+        return null;
+    }
+
+    /**
+     * Fills every entry of {@code counts} that is -1 with the number of air or lava blocks in {@code [minY, maxY)} of its column.
+     * {@code counts} is a {@code sampledSize * sampledSize} grid indexed {@code x + z * sampledSize} whose columns are
+     * {@code sampleResolution} blocks apart starting at the given world coordinates.
+     *
+     * @return false if sampling was cancelled before every column was filled.
+     */
+    public boolean countCaveBlocks(int minWorldX, int minWorldZ, int sampledSize, int sampleResolution, int minY, int maxY, int[] counts, BooleanSupplier cancelled) {
+        int cellWidth = this.noiseSettings.getCellWidth();
+        int batchCells = sampleResolution >= BATCH_BLOCKS ? 1 : Math.max(1, BATCH_BLOCKS / cellWidth);
+        int batchWidth = batchCells * cellWidth;
+
+        Long2ObjectLinkedOpenHashMap<IntArrayList> batches = new Long2ObjectLinkedOpenHashMap<>();
+        for (int sampleZ = 0; sampleZ < sampledSize; sampleZ++) {
+            for (int sampleX = 0; sampleX < sampledSize; sampleX++) {
+                int idx = sampleX + sampleZ * sampledSize;
+                if (counts[idx] != -1) {
+                    continue;
+                }
+                int worldX = minWorldX + sampleX * sampleResolution;
+                int worldZ = minWorldZ + sampleZ * sampleResolution;
+                long batchKey = ChunkPos.asLong(Math.floorDiv(worldX, batchWidth), Math.floorDiv(worldZ, batchWidth));
+                batches.computeIfAbsent(batchKey, key -> new IntArrayList()).add(idx);
+            }
+        }
+
+        for (ObjectIterator<Long2ObjectLinkedOpenHashMap.Entry<IntArrayList>> iterator = batches.long2ObjectEntrySet().fastIterator(); iterator.hasNext(); ) {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            Long2ObjectLinkedOpenHashMap.Entry<IntArrayList> batch = iterator.next();
+            long batchKey = batch.getLongKey();
+            int batchMinX = ChunkPos.getX(batchKey) * batchWidth;
+            int batchMinZ = ChunkPos.getZ(batchKey) * batchWidth;
+            sampleBatch(batchMinX, batchMinZ, batchCells, batch.getValue(), minWorldX, minWorldZ, sampledSize, sampleResolution, minY, maxY, counts);
+        }
+        return true;
+    }
+
+    private void sampleBatch(int batchMinX, int batchMinZ, int batchCells, IntArrayList columns, int minWorldX, int minWorldZ, int sampledSize, int sampleResolution, int minY, int maxY, int[] counts) {
+        int cellWidth = this.noiseSettings.getCellWidth();
+        int cellHeight = this.noiseSettings.getCellHeight();
+        int cellMinY = Mth.floorDiv(this.noiseSettings.minY(), cellHeight);
+        int cellCountY = Mth.floorDiv(this.noiseSettings.height(), cellHeight);
+        int fromCellY = Math.max(0, Mth.floorDiv(minY, cellHeight) - cellMinY);
+        int toCellY = Math.min(cellCountY - 1, Mth.floorDiv(maxY - 1, cellHeight) - cellMinY);
+
+        NoiseChunk noiseChunk = new NoiseChunk(batchCells, this.randomState, batchMinX, batchMinZ, this.noiseSettings, DensityFunctions.BeardifierMarker.INSTANCE, this.settings, this.fluidPicker, Blender.empty());
+        NoiseChunkAccessor interpolated = (NoiseChunkAccessor) noiseChunk;
+
+        noiseChunk.initializeForFirstCellX();
+        try {
+            for (int cellX = 0; cellX < batchCells; cellX++) {
+                noiseChunk.advanceCellX(cellX);
+                int cellStartX = batchMinX + cellX * cellWidth;
+
+                for (int i = 0; i < columns.size(); i++) {
+                    int idx = columns.getInt(i);
+                    int worldX = minWorldX + (idx % sampledSize) * sampleResolution;
+                    if (worldX < cellStartX || worldX >= cellStartX + cellWidth) {
+                        continue;
+                    }
+                    int worldZ = minWorldZ + (idx / sampledSize) * sampleResolution;
+                    int cellZ = (worldZ - batchMinZ) / cellWidth;
+                    double fracX = (double) (worldX - cellStartX) / (double) cellWidth;
+                    double fracZ = (double) (worldZ - batchMinZ - cellZ * cellWidth) / (double) cellWidth;
+
+                    int caveBlocks = 0;
+                    for (int cellY = toCellY; cellY >= fromCellY; cellY--) {
+                        noiseChunk.selectCellYZ(cellY, cellZ);
+                        for (int yInCell = cellHeight - 1; yInCell >= 0; yInCell--) {
+                            int worldY = (cellMinY + cellY) * cellHeight + yInCell;
+                            if (worldY < minY || worldY >= maxY) {
+                                continue;
+                            }
+                            noiseChunk.updateForY(worldY, (double) yInCell / (double) cellHeight);
+                            noiseChunk.updateForX(worldX, fracX);
+                            noiseChunk.updateForZ(worldZ, fracZ);
+                            BlockState state = interpolated.wvGetInterpolatedState();
+                            if (state == null) {
+                                state = this.settings.defaultBlock();
+                            }
+                            if (state.isAir() || state.getFluidState().is(FluidTags.LAVA)) {
+                                caveBlocks++;
+                            }
+                        }
+                    }
+                    counts[idx] = caveBlocks;
+                }
+                noiseChunk.swapSlices();
+            }
+        } finally {
+            noiseChunk.stopInterpolation();
+        }
+    }
+}
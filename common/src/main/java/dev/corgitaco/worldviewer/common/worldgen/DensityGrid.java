@@ -0,0 +1,183 @@
+package dev.corgitaco.worldviewer.common.worldgen;
+
+import net.minecraft.util.KeyDispatchDataCodec;
+import net.minecraft.util.StringRepresentable;
+import net.minecraft.world.level.levelgen.DensityFunction;
+import net.minecraft.world.level.levelgen.DensityFunctions;
+
+/**
+ * A {@link DensityFunction.ContextProvider} over {@code columnCount} columns of {@code countY} points each, {@code stepY} blocks
+ * apart from {@code minY}. Points are indexed {@code column * countY + level}, so every column is a contiguous run of the array
+ * passed to {@link #fill}.
+ * <p>
+ * Like {@link net.minecraft.world.level.levelgen.NoiseChunk} the grid is its own {@link DensityFunction.FunctionContext}, only the
+ * point of the index being computed is valid at a time. Flat caches of the wrapped function are replaced by a cache holding the
+ * value of the current column.
+ */
+public class DensityGrid implements DensityFunction.ContextProvider, DensityFunction.FunctionContext {
+
+    private final DensityFunction function;
+    private final int[] columnX;
+    private final int[] columnZ;
+    private final int minY;
+    private final int stepY;
+    private final int countY;
+    private int columnCount;
+
+    // Identifies the current column across batches so column caches never serve a value from a previous one.
+    private long firstColumnKey;
+    private long columnKey;
+    private int blockX;
+    private int blockY;
+    private int blockZ;
+
+    public DensityGrid(DensityFunction function, int maxColumns, int minY, int stepY, int countY) {
+        this.function = function.mapAll(this::wrap);
+        this.columnX = new int[maxColumns];
+        this.columnZ = new int[maxColumns];
+        this.minY = minY;
+        this.stepY = stepY;
+        this.countY = countY;
+    }
+
+    public void clear() {
+        this.columnCount = 0;
+        this.firstColumnKey += this.columnX.length;
+    }
+
+    public void addColumn(int blockX, int blockZ) {
+        this.columnX[this.columnCount] = blockX;
+        this.columnZ[this.columnCount] = blockZ;
+        this.columnCount++;
+    }
+
+    public int columnX(int column) {
+        return this.columnX[column];
+    }
+
+    public int columnZ(int column) {
+        return this.columnZ[column];
+    }
+
+    public int columnCount() {
+        return this.columnCount;
+    }
+
+    public boolean isFull() {
+        return this.columnCount == this.columnX.length;
+    }
+
+    /**
+     * Evaluates the function at every point of the current columns through {@link DensityFunction#fillArray}, {@code values} must
+     * be exactly {@link #size()} long.
+     */
+    public void fill(double[] values) {
+        this.function.fillArray(values, this);
+    }
+
+    /**
+     * Evaluates the function at a single height of one of the current columns, sharing its column caches with {@link #fill}.
+     */
+    public double compute(int column, int blockY) {
+        this.columnKey = this.firstColumnKey + column;
+        this.blockX = this.columnX[column];
+        this.blockY = blockY;
+        this.blockZ = this.columnZ[column];
+        return this.function.compute(this);
+    }
+
+    public int size() {
+        return this.columnCount * this.countY;
+    }
+
+    @Override
+    public DensityFunction.FunctionContext forIndex(int index) {
+        int column = index / this.countY;
+        this.columnKey = this.firstColumnKey + column;
+        this.blockX = this.columnX[column];
+        this.blockY = this.minY + (index - column * this.countY) * this.stepY;
+        this.blockZ = this.columnZ[column];
+        return this;
+    }
+
+    @Override
+    public void fillAllDirectly(double[] values, DensityFunction function) {
+        for (int index = 0; index < values.length; index++) {
+            values[index] = function.compute(forIndex(index));
+        }
+    }
+
+    @Override
+    public int blockX() {
+        return this.blockX;
+    }
+
+    @Override
+    public int blockY() {
+        return this.blockY;
+    }
+
+    @Override
+    public int blockZ() {
+        return this.blockZ;
+    }
+
+    private DensityFunction wrap(DensityFunction function) {
+        if (function instanceof DensityFunctions.MarkerOrMarked marked) {
+            StringRepresentable type = marked.type();
+            String name = type.getSerializedName();
+            if (name.equals("flat_cache") || name.equals("cache_2d")) {
+                return new ColumnCache(marked.wrapped());
+            }
+        }
+        return function;
+    }
+
+    private class ColumnCache implements DensityFunction {
+
+        private final DensityFunction wrapped;
+        private long cachedColumnKey = Long.MIN_VALUE;
+        private double value;
+
+        private ColumnCache(DensityFunction wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        @Override
+        public double compute(FunctionContext context) {
+            if (context != DensityGrid.this) {
+                return this.wrapped.compute(context);
+            }
+            if (this.cachedColumnKey != DensityGrid.this.columnKey) {
+                this.value = this.wrapped.compute(context);
+                this.cachedColumnKey = DensityGrid.this.columnKey;
+            }
+            return this.value;
+        }
+
+        @Override
+        public void fillArray(double[] values, ContextProvider provider) {
+            provider.fillAllDirectly(values, this);
+        }
+
+        @Override
+        public DensityFunction mapAll(Visitor visitor) {
+            return visitor.apply(new ColumnCache(this.wrapped.mapAll(visitor)));
+        }
+
+        @Override
+        public double minValue() {
+            return this.wrapped.minValue();
+        }
+
+        @Override
+        public double maxValue() {
+            return this.wrapped.maxValue();
+        }
+
+        @Override
+        public KeyDispatchDataCodec<? extends DensityFunction> codec() {
+            throw new UnsupportedOperationException("Calling .codec() on a DensityGrid column cache");
+        }
+    }
+}
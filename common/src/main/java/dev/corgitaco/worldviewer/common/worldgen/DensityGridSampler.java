@@ -0,0 +1,178 @@
+package dev.corgitaco.worldviewer.common.worldgen;
+
+import dev.corgitaco.worldviewer.mixin.NoiseBasedChunkGeneratorAccessor;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.FluidTags;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.levelgen.Aquifer;
+import net.minecraft.world.level.levelgen.NoiseBasedChunkGenerator;
+import net.minecraft.world.level.levelgen.NoiseGeneratorSettings;
+import net.minecraft.world.level.levelgen.NoiseSettings;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Estimates ocean floor heights and cave blocks for a grid of sample columns from the final density alone.
+ * <p>
+ * The final density is filled at every cell corner height of up to {@link #BATCH_COLUMNS} columns per {@link DensityGrid#fill}
+ * call and linearly interpolated between them, block states are never resolved. Positive density is solid, anything else counts
+ * as open unless aquifers are disabled and the global fluid is water there. This is an approximation of vanilla, which interpolates
+ * only the {@code interpolated} parts of the density and lets aquifers place barriers, so it is opt in with
+ * {@code -Dworldviewer.densityGrid=true}.
+ */
+public class DensityGridSampler {
+
+    public static final boolean ENABLED = Boolean.getBoolean("worldviewer.densityGrid");
+
+    private static final int BATCH_COLUMNS = 64;
+
+    private final NoiseGeneratorSettings settings;
+    private final NoiseSettings noiseSettings;
+    private final Aquifer.FluidPicker fluidPicker;
+    private final ThreadLocal<Buffers> buffers;
+
+    private DensityGridSampler(ServerLevel level, NoiseBasedChunkGenerator generator) {
+        this.settings = generator.generatorSettings().value();
+        this.noiseSettings = this.settings.noiseSettings().clampToHeightAccessor(level);
+        this.fluidPicker = ((NoiseBasedChunkGeneratorAccessor) generator).wvGetGlobalFluidPicker().get();
+        int cellHeight = this.noiseSettings.getCellHeight();
+        int levels = Mth.floorDiv(this.noiseSettings.height(), cellHeight) + 1;
+        // Grids are single threaded contexts, each generator thread evaluates through its own.
+        this.buffers = ThreadLocal.withInitial(() -> new Buffers(new DensityGrid(level.getChunkSource().randomState().router().finalDensity(), BATCH_COLUMNS, this.noiseSettings.minY(), cellHeight, levels), levels, cellHeight));
+    }
+
+    @Nullable
+    public static DensityGridSampler create(ServerLevel level) {
+        if (ENABLED && level.getChunkSource().getGenerator() instanceof NoiseBasedChunkGenerator noiseBasedChunkGenerator) {
+            return new DensityGridSampler(level, noiseBasedChunkGenerator);
+        }
+        return null;
+    }
+
+    /**
+     * Fills every entry of {@code heights} that is {@link Integer#MIN_VALUE} with the estimated
+     * {@link net.minecraft.world.level.levelgen.Heightmap.Types#OCEAN_FLOOR} height of its column, laid out like
+     * {@link CaveColumnSampler#countCaveBlocks}.
+     *
+     * @return false if sampling was cancelled before every column was filled.
+     */
+    public boolean sampleOceanFloor(int minWorldX, int minWorldZ, int sampledSize, int sampleResolution, int[] heights, BooleanSupplier cancelled) {
+        return sampleColumns(minWorldX, minWorldZ, sampledSize, sampleResolution, heights, Integer.MIN_VALUE, cancelled, (worldX, worldZ, densities, surface) -> surface);
+    }
+
+    /**
+     * Fills every entry of {@code counts} that is -1 with the estimated number of open blocks in {@code [minY, maxY)} below the
+     * surface of its column, laid out like {@link CaveColumnSampler#countCaveBlocks}.
+     *
+     * @return false if sampling was cancelled before every column was filled.
+     */
+    public boolean countCaveBlocks(int minWorldX, int minWorldZ, int sampledSize, int sampleResolution, int minY, int maxY, int[] counts, BooleanSupplier cancelled) {
+        int columnMinY = this.noiseSettings.minY();
+        return sampleColumns(minWorldX, minWorldZ, sampledSize, sampleResolution, counts, -1, cancelled, (worldX, worldZ, densities, surface) -> {
+            int from = Math.max(minY, columnMinY) - columnMinY;
+            int to = Math.min(maxY, surface) - columnMinY;
+            int open = 0;
+            for (int i = from; i < to; i++) {
+                open += densities[i] <= 0.0 ? 1 : 0;
+            }
+            if (!this.settings.isAquiferEnabled()) {
+                for (int i = from; i < to; i++) {
+                    if (densities[i] <= 0.0) {
+                        int worldY = columnMinY + i;
+                        if (this.fluidPicker.computeFluid(worldX, worldY, worldZ).at(worldY).getFluidState().is(FluidTags.WATER)) {
+                            open--;
+                        }
+                    }
+                }
+            }
+            return open;
+        });
+    }
+
+    private boolean sampleColumns(int minWorldX, int minWorldZ, int sampledSize, int sampleResolution, int[] out, int missing, BooleanSupplier cancelled, ColumnFunction columnFunction) {
+        Buffers buffers = this.buffers.get();
+        DensityGrid grid = buffers.grid;
+        int[] indices = buffers.indices;
+        grid.clear();
+
+        int sampleCount = sampledSize * sampledSize;
+        for (int idx = 0; idx < sampleCount; idx++) {
+            if (out[idx] != missing) {
+                continue;
+            }
+            indices[grid.columnCount()] = idx;
+            grid.addColumn(minWorldX + (idx % sampledSize) * sampleResolution, minWorldZ + (idx / sampledSize) * sampleResolution);
+            if (grid.isFull()) {
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+                sampleBatch(buffers, out, columnFunction);
+                grid.clear();
+            }
+        }
+        if (grid.columnCount() > 0) {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            sampleBatch(buffers, out, columnFunction);
+            grid.clear();
+        }
+        return true;
+    }
+
+    private void sampleBatch(Buffers buffers, int[] out, ColumnFunction columnFunction) {
+        DensityGrid grid = buffers.grid;
+        // Vanilla fills loop over the whole array, so a partial batch gets an array of its own size.
+        double[] values = grid.isFull() ? buffers.values : new double[grid.size()];
+        double[] densities = buffers.densities;
+        int levels = buffers.levels;
+        int cellHeight = this.noiseSettings.getCellHeight();
+        int minY = this.noiseSettings.minY();
+        double invCellHeight = 1.0 / cellHeight;
+
+        grid.fill(values);
+        for (int column = 0; column < grid.columnCount(); column++) {
+            int base = column * levels;
+            for (int cellY = 0; cellY < levels - 1; cellY++) {
+                double bottom = values[base + cellY];
+                double step = (values[base + cellY + 1] - bottom) * invCellHeight;
+                int offset = cellY * cellHeight;
+                for (int yInCell = 0; yInCell < cellHeight; yInCell++) {
+                    densities[offset + yInCell] = bottom + step * yInCell;
+                }
+            }
+
+            int surface = minY;
+            for (int i = densities.length - 1; i >= 0; i--) {
+                if (densities[i] > 0.0) {
+                    surface = minY + i + 1;
+                    break;
+                }
+            }
+
+            int idx = buffers.indices[column];
+            out[idx] = columnFunction.apply(grid.columnX(column), grid.columnZ(column), densities, surface);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ColumnFunction {
+        int apply(int worldX, int worldZ, double[] densities, int surface);
+    }
+
+    private static final class Buffers {
+        private final DensityGrid grid;
+        private final int levels;
+        private final int[] indices = new int[BATCH_COLUMNS];
+        private final double[] values;
+        private final double[] densities;
+
+        private Buffers(DensityGrid grid, int levels, int cellHeight) {
+            this.grid = grid;
+            this.levels = levels;
+            this.values = new double[BATCH_COLUMNS * levels];
+            this.densities = new double[(levels - 1) * cellHeight];
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package dev.corgitaco.worldviewer.common.worldgen;
+
+import dev.corgitaco.worldviewer.common.WorldViewer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.levelgen.NoiseBasedChunkGenerator;
+import net.minecraft.world.level.levelgen.NoiseSettings;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estimates {@link Heightmap.Types#OCEAN_FLOOR} heights from the final density without scanning the whole column.
+ * <p>
+ * The surface is bracketed between a solid and an open cell corner by galloping away from a starting guess, then narrowed down by
+ * bisection and finally solved inside its cell by interpolating the two corners. Generator threads sample tiles column by column,
+ * so the guess is the cell the previous estimate on the same thread ended in and adjacent columns usually settle after a few
+ * evaluations. An open corner is only accepted once the corner {@link #CONFIRM_CELLS} cells above it is open too, which keeps the
+ * search from stopping at the ceiling of a cave. Like {@link DensityGridSampler} it reads the density sign only and can still be
+ * fooled by overhangs, so it is opt in with {@code -Dworldviewer.surfaceEstimator=true}. Add
+ * {@code -Dworldviewer.surfaceEstimator.validate=true} to log how far it is from {@link NoiseBasedChunkGenerator#getBaseHeight}.
+ * Estimates are only cached in memory, {@link dev.corgitaco.worldviewer.common.storage.DataTile} never saves them to the data tile
+ * cache.
+ */
+public class SurfaceHeightEstimator {
+
+    public static final boolean ENABLED = Boolean.getBoolean("worldviewer.surfaceEstimator");
+    public static final boolean VALIDATE = Boolean.getBoolean("worldviewer.surfaceEstimator.validate");
+
+    private static final int CONFIRM_CELLS = 2;
+    private static final int VALIDATION_LOG_INTERVAL = 4096;
+
+    private final ServerLevel level;
+    private final NoiseBasedChunkGenerator generator;
+    private final int minY;
+    private final int cellHeight;
+    private final int levels;
+    private final int seaLevelCell;
+    private final ThreadLocal<Search> searches;
+
+    private final AtomicLong validated = new AtomicLong();
+    private final LongAdder mismatches = new LongAdder();
+    private final LongAdder totalError = new LongAdder();
+    private final LongAccumulator maxError = new LongAccumulator(Math::max, 0);
+
+    private SurfaceHeightEstimator(ServerLevel level, NoiseBasedChunkGenerator generator) {
+        this.level = level;
+        this.generator = generator;
+        NoiseSettings noiseSettings = generator.generatorSettings().value().noiseSettings().clampToHeightAccessor(level);
+        this.minY = noiseSettings.minY();
+        this.cellHeight = noiseSettings.getCellHeight();
+        this.levels = Mth.floorDiv(noiseSettings.height(), this.cellHeight) + 1;
+        this.seaLevelCell = Mth.clamp(Mth.floorDiv(generator.getSeaLevel() - this.minY, this.cellHeight), 0, this.levels - 1);
+        this.searches = ThreadLocal.withInitial(() -> new Search(new DensityGrid(level.getChunkSource().randomState().router().finalDensity(), 1, this.minY, this.cellHeight, this.levels)));
+    }
+
+    @Nullable
+    public static SurfaceHeightEstimator create(ServerLevel level) {
+        if (ENABLED && level.getChunkSource().getGenerator() instanceof NoiseBasedChunkGenerator noiseBasedChunkGenerator) {
+            return new SurfaceHeightEstimator(level, noiseBasedChunkGenerator);
+        }
+        return null;
+    }
+
+    public int estimateOceanFloor(int blockX, int blockZ) {
+        int estimate = this.searches.get().estimate(blockX, blockZ);
+        if (VALIDATE) {
+            validate(blockX, blockZ, estimate);
+        }
+        return estimate;
+    }
+
+    private void validate(int blockX, int blockZ, int estimate) {
+        int exact = this.generator.getBaseHeight(blockX, blockZ, Heightmap.Types.OCEAN_FLOOR, this.level, this.level.getChunkSource().randomState());
+        int error = Math.abs(exact - estimate);
+        if (error != 0) {
+            this.mismatches.increment();
+            this.totalError.add(error);
+            this.maxError.accumulate(error);
+        }
+        long count = this.validated.incrementAndGet();
+        if (count % VALIDATION_LOG_INTERVAL == 0) {
+            long mismatches = this.mismatches.sum();
+            WorldViewer.LOGGER.info("Surface estimator: %s of %s columns off, %.2f blocks on average when off, %s at most.".formatted(mismatches, count, mismatches == 0 ? 0.0 : (double) this.totalError.sum() / mismatches, this.maxError.get()));
+        }
+    }
+
+    private final class Search {
+        private final DensityGrid grid;
+        private final double[] corners = new double[SurfaceHeightEstimator.this.levels];
+        private int lastCell = -1;
+
+        private Search(DensityGrid grid) {
+            this.grid = grid;
+        }
+
+        private int estimate(int blockX, int blockZ) {
+            this.grid.clear();
+            this.grid.addColumn(blockX, blockZ);
+            Arrays.fill(this.corners, Double.NaN);
+
+            int levels = SurfaceHeightEstimator.this.levels;
+            int guess = this.lastCell >= 0 ? this.lastCell : SurfaceHeightEstimator.this.seaLevelCell;
+
+            // -1 and levels stand for "no solid corner found" and "no open corner found" respectively.
+            int solid = -1;
+            int open = levels;
+            if (isSolid(guess)) {
+                solid = guess;
+            } else {
+                open = guess;
+            }
+
+            while (true) {
+                for (int step = 1; open == levels && solid < levels - 1; step <<= 1) {
+                    int probe = Math.min(solid + step, levels - 1);
+                    if (isSolid(probe)) {
+                        solid = probe;
+                    } else {
+                        open = probe;
+                    }
+                }
+                for (int step = 1; solid == -1 && open > 0; step <<= 1) {
+                    int probe = Math.max(open - step, 0);
+                    if (isSolid(probe)) {
+                        solid = probe;
+                    } else {
+                        open = probe;
+                    }
+                }
+
+                int confirm = open + CONFIRM_CELLS;
+                if (open == levels || confirm >= levels || !isSolid(confirm)) {
+                    break;
+                }
+                solid = confirm;
+                open = levels;
+            }
+
+            if (solid == -1) {
+                this.lastCell = 0;
+                return SurfaceHeightEstimator.this.minY;
+            }
+            if (open == levels) {
+                this.lastCell = levels - 1;
+                return cornerY(levels - 1);
+            }
+
+            while (open - solid > 1) {
+                int mid = (solid + open) >>> 1;
+                if (isSolid(mid)) {
+                    solid = mid;
+                } else {
+                    open = mid;
+                }
+            }
+            this.lastCell = solid;
+
+            int cellHeight = SurfaceHeightEstimator.this.cellHeight;
+            double bottom = corner(solid);
+            double step = (corner(open) - bottom) / cellHeight;
+            int yInCell = cellHeight - 1;
+            while (yInCell > 0 && bottom + step * yInCell <= 0.0) {
+                yInCell--;
+            }
+            return cornerY(solid) + yInCell + 1;
+        }
+
+        private boolean isSolid(int cell) {
+            return corner(cell) > 0.0;
+        }
+
+        private double corner(int cell) {
+            double density = this.corners[cell];
+            if (Double.isNaN(density)) {
+                density = this.grid.compute(0, cornerY(cell));
+                this.corners[cell] = density;
+            }
+            return density;
+        }
+
+        private int cornerY(int cell) {
+            return SurfaceHeightEstimator.this.minY + cell * SurfaceHeightEstimator.this.cellHeight;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package dev.corgitaco.worldviewer.mixin;
+
+import net.minecraft.world.level.levelgen.Aquifer;
+import net.minecraft.world.level.levelgen.NoiseBasedChunkGenerator;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.function.Supplier;
+
+@Mixin(NoiseBasedChunkGenerator.class)
+public interface NoiseBasedChunkGeneratorAccessor {
+
+    @Accessor("globalFluidPicker")
+    Supplier<Aquifer.FluidPicker> wvGetGlobalFluidPicker();
+}
@@ -0,0 +1,15 @@
+package dev.corgitaco.worldviewer.mixin;
+
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.NoiseChunk;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+@Mixin(NoiseChunk.class)
+public interface NoiseChunkAccessor {
+
+    @Nullable
+    @Invoker("getInterpolatedState")
+    BlockState wvGetInterpolatedState();
+}
@@ -0,0 +1,130 @@
+package dev.corgitaco.worldviewer.client.tile;
+
+import dev.corgitaco.worldviewer.util.LongPackingUtil;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileMergePlannerTest {
+
+    @Test
+    void mergesACompleteGroup() {
+        LongSet tiles = grid(0, 0, 2, 1);
+        List<TileMergePlanner.Merge> merges = TileMergePlanner.plan(1, tiles, key -> true, key -> false);
+
+        assertEquals(1, merges.size());
+        TileMergePlanner.Merge merge = merges.get(0);
+        assertEquals(1, merge.scale());
+        assertEquals(2, merge.newScale());
+        assertEquals(key(0, 0), merge.parentKey());
+        assertArrayEquals(new long[]{key(0, 0), key(0, 1), key(1, 0), key(1, 1)}, merge.children());
+    }
+
+    @Test
+    void mergesGroupsAtNegativeCoordinates() {
+        LongSet tiles = grid(-4, -4, 4, 1);
+        List<TileMergePlanner.Merge> merges = sorted(TileMergePlanner.plan(1, tiles, key -> true, key -> false));
+
+        assertEquals(4, merges.size());
+        assertEquals(key(-4, -4), merges.get(0).parentKey());
+        assertEquals(key(-4, -2), merges.get(1).parentKey());
+        assertEquals(key(-2, -4), merges.get(2).parentKey());
+        assertEquals(key(-2, -2), merges.get(3).parentKey());
+        assertArrayEquals(new long[]{key(-2, -2), key(-2, -1), key(-1, -2), key(-1, -1)}, merges.get(3).children());
+    }
+
+    @Test
+    void doesNotMergeAcrossTheOrigin() {
+        // Aligned groups are [-2, -1] and [0, 1], so [-1, 0] is never a group.
+        LongSet tiles = new LongOpenHashSet(new long[]{key(-1, -1), key(-1, 0), key(0, -1), key(0, 0)});
+        assertTrue(TileMergePlanner.plan(1, tiles, key -> true, key -> false).isEmpty());
+    }
+
+    @Test
+    void skipsGroupsWithAMissingChild() {
+        LongSet tiles = grid(0, 0, 2, 1);
+        tiles.remove(key(1, 0));
+        assertTrue(TileMergePlanner.plan(1, tiles, key -> true, key -> false).isEmpty());
+
+        LongSet negative = grid(-2, -2, 2, 1);
+        negative.remove(key(-2, -2));
+        assertTrue(TileMergePlanner.plan(1, negative, key -> true, key -> false).isEmpty());
+    }
+
+    @Test
+    void skipsGroupsWithANonMergeableChild() {
+        LongSet tiles = grid(0, 0, 4, 1);
+        long notReady = key(3, 2);
+        List<TileMergePlanner.Merge> merges = sorted(TileMergePlanner.plan(1, tiles, key -> key != notReady, key -> false));
+
+        assertEquals(3, merges.size());
+        for (TileMergePlanner.Merge merge : merges) {
+            assertNotEquals(key(2, 2), merge.parentKey());
+        }
+    }
+
+    @Test
+    void skipsGroupsWhoseParentExists() {
+        LongSet tiles = grid(-2, 0, 4, 1);
+        long existing = key(-2, 2);
+        List<TileMergePlanner.Merge> merges = TileMergePlanner.plan(1, tiles, key -> true, key -> key == existing);
+
+        assertEquals(3, merges.size());
+        for (TileMergePlanner.Merge merge : merges) {
+            assertNotEquals(existing, merge.parentKey());
+        }
+    }
+
+    @Test
+    void mergesChainsAcrossScales() {
+        LongSet tiles = grid(-8, -8, 8, 1);
+        for (int scale = 1; scale < 8; scale <<= 1) {
+            List<TileMergePlanner.Merge> merges = TileMergePlanner.plan(scale, tiles, key -> true, key -> false);
+            int groupsPerAxis = 8 / (scale * 2);
+            assertEquals(groupsPerAxis * groupsPerAxis, merges.size());
+
+            LongSet parents = new LongOpenHashSet();
+            for (TileMergePlanner.Merge merge : merges) {
+                assertEquals(scale, merge.scale());
+                int parentX = LongPackingUtil.getTileX(merge.parentKey());
+                int parentZ = LongPackingUtil.getTileZ(merge.parentKey());
+                assertEquals(0, Math.floorMod(parentX, merge.newScale()));
+                assertEquals(0, Math.floorMod(parentZ, merge.newScale()));
+                assertArrayEquals(new long[]{key(parentX, parentZ), key(parentX, parentZ + scale), key(parentX + scale, parentZ), key(parentX + scale, parentZ + scale)}, merge.children());
+                parents.add(merge.parentKey());
+            }
+            assertEquals(grid(-8, -8, groupsPerAxis, scale * 2), parents);
+            tiles = parents;
+        }
+        assertEquals(LongOpenHashSet.of(key(-8, -8)), tiles);
+    }
+
+    /**
+     * @return {@code count x count} tile keys starting at the given corner, spaced by {@code scale}.
+     */
+    private static LongSet grid(int minX, int minZ, int count, int scale) {
+        LongSet tiles = new LongOpenHashSet();
+        for (int x = 0; x < count; x++) {
+            for (int z = 0; z < count; z++) {
+                tiles.add(key(minX + x * scale, minZ + z * scale));
+            }
+        }
+        return tiles;
+    }
+
+    private static List<TileMergePlanner.Merge> sorted(List<TileMergePlanner.Merge> merges) {
+        return merges.stream()
+                .sorted(Comparator.<TileMergePlanner.Merge>comparingInt(merge -> LongPackingUtil.getTileX(merge.parentKey()))
+                        .thenComparingInt(merge -> LongPackingUtil.getTileZ(merge.parentKey())))
+                .toList();
+    }
+
+    private static long key(int tileX, int tileZ) {
+        return LongPackingUtil.tileKey(tileX, tileZ);
+    }
+}
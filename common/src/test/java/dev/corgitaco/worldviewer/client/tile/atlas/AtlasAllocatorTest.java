@@ -0,0 +1,181 @@
+package dev.corgitaco.worldviewer.client.tile.atlas;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AtlasAllocatorTest {
+
+    private static final int PAGE_SIZE = 256;
+    private static final int MIN_SLOT_SIZE = 16;
+
+    @Test
+    void rejectsInvalidSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new AtlasAllocator(100, 16));
+        assertThrows(IllegalArgumentException.class, () -> new AtlasAllocator(256, 12));
+        assertThrows(IllegalArgumentException.class, () -> new AtlasAllocator(16, 32));
+        assertThrows(IllegalArgumentException.class, () -> new AtlasAllocator(1 << 20, 1));
+    }
+
+    @Test
+    void roundsSlotsUpToPowersOfTwo() {
+        AtlasAllocator allocator = new AtlasAllocator(PAGE_SIZE, MIN_SLOT_SIZE);
+        assertEquals(MIN_SLOT_SIZE, allocator.allocate(1).size());
+        assertEquals(64, allocator.allocate(33).size());
+        assertEquals(64, allocator.allocate(64).size());
+        assertEquals(PAGE_SIZE, allocator.allocate(PAGE_SIZE).size());
+    }
+
+    @Test
+    void rejectsOversizeWidths() {
+        AtlasAllocator allocator = new AtlasAllocator(PAGE_SIZE, MIN_SLOT_SIZE);
+        assertNull(allocator.allocate(PAGE_SIZE + 1));
+        assertNull(allocator.allocate(0));
+        assertNull(allocator.allocate(-16));
+        assertEquals(0, allocator.pageCount());
+    }
+
+    @Test
+    void splitsAPageIntoQuarters() {
+        AtlasAllocator allocator = new AtlasAllocator(PAGE_SIZE, MIN_SLOT_SIZE);
+        Set<AtlasAllocator.Slot> slots = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            AtlasAllocator.Slot slot = allocator.allocate(PAGE_SIZE / 2);
+            assertEquals(0, slot.page());
+            slots.add(slot);
+        }
+        assertEquals(Set.of(
+                new AtlasAllocator.Slot(0, 0, 0, 128),
+                new AtlasAllocator.Slot(0, 128, 0, 128),
+                new AtlasAllocator.Slot(0, 0, 128, 128),
+                new AtlasAllocator.Slot(0, 128, 128, 128)
+        ), slots);
+        assertEquals(1, allocator.pageCount());
+    }
+
+    @Test
+    void fillsEveryMinimumSlotUpToTheMaxCoordinate() {
+        AtlasAllocator allocator = new AtlasAllocator(PAGE_SIZE, MIN_SLOT_SIZE);
+        int perRow = PAGE_SIZE / MIN_SLOT_SIZE;
+        Set<AtlasAllocator.Slot> slots = new HashSet<>();
+        for (int i = 0; i < perRow * perRow; i++) {
+            AtlasAllocator.Slot slot = allocator.allocate(MIN_SLOT_SIZE);
+            assertEquals(0, slot.page());
+            assertTrue(slot.x() >= 0 && slot.x() + slot.size() <= PAGE_SIZE);
+            assertTrue(slot.y() >= 0 && slot.y() + slot.size() <= PAGE_SIZE);
+            assertTrue(slots.add(slot), "Slot handed out twice: " + slot);
+        }
+        int max = PAGE_SIZE - MIN_SLOT_SIZE;
+        assertTrue(slots.contains(new AtlasAllocator.Slot(0, max, max, MIN_SLOT_SIZE)));
+        assertTrue(slots.contains(new AtlasAllocator.Slot(0, max, 0, MIN_SLOT_SIZE)));
+        assertTrue(slots.contains(new AtlasAllocator.Slot(0, 0, max, MIN_SLOT_SIZE)));
+        assertEquals(1, allocator.pageCount());
+
+        assertEquals(1, allocator.allocate(MIN_SLOT_SIZE).page());
+    }
+
+    @Test
+    void keysAtTheLargestSupportedPage() {
+        int pageSize = 1 << 16;
+        AtlasAllocator allocator = new AtlasAllocator(pageSize, 1);
+        List<AtlasAllocator.Slot> slots = new ArrayList<>();
+        // Three quarters of every level, then all four texels, leaves the texel at the max coordinate of both axes for last.
+        for (int size = pageSize / 2; size > 1; size >>= 1) {
+            for (int i = 0; i < 3; i++) {
+                slots.add(allocator.allocate(size));
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            slots.add(allocator.allocate(1));
+        }
+        assertEquals(new AtlasAllocator.Slot(0, pageSize - 1, pageSize - 1, 1), slots.get(slots.size() - 1));
+        assertEquals(slots.size(), new HashSet<>(slots).size());
+        assertEquals(1, allocator.pageCount());
+
+        for (AtlasAllocator.Slot slot : slots) {
+            allocator.free(slot);
+        }
+        assertTrue(allocator.isPageEmpty(0));
+        assertEquals(new AtlasAllocator.Slot(0, 0, 0, pageSize), allocator.allocate(pageSize));
+    }
+
+    @Test
+    void mergesFreedQuartersBackIntoAPage() {
+        AtlasAllocator allocator = new AtlasAllocator(PAGE_SIZE, MIN_SLOT_SIZE);
+        List<AtlasAllocator.Slot> slots = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            slots.add(allocator.allocate(64));
+        }
+        assertFalse(allocator.isPageEmpty(0));
+
+        for (int i = 0; i < slots.size() - 1; i++) {
+            allocator.free(slots.get(i));
+            assertFalse(allocator.isPageEmpty(0));
+        }
+        allocator.free(slots.get(slots.size() - 1));
+        assertTrue(allocator.isPageEmpty(0));
+
+        AtlasAllocator.Slot whole = allocator.allocate(PAGE_SIZE);
+        assertEquals(new AtlasAllocator.Slot(0, 0, 0, PAGE_SIZE), whole);
+        assertEquals(1, allocator.pageCount());
+    }
+
+    @Test
+    void reusesFreedSlotsBeforeGrowing() {
+        AtlasAllocator allocator = new AtlasAllocator(PAGE_SIZE, MIN_SLOT_SIZE);
+        AtlasAllocator.Slot first = allocator.allocate(128);
+        allocator.allocate(128);
+        allocator.allocate(128);
+        allocator.allocate(128);
+        allocator.free(first);
+
+        assertEquals(first, allocator.allocate(128));
+        assertEquals(1, allocator.pageCount());
+    }
+
+    @Test
+    void growsPagesWhenFull() {
+        AtlasAllocator allocator = new AtlasAllocator(PAGE_SIZE, MIN_SLOT_SIZE);
+        assertEquals(0, allocator.allocate(PAGE_SIZE).page());
+        AtlasAllocator.Slot second = allocator.allocate(MIN_SLOT_SIZE);
+        assertEquals(1, second.page());
+        assertEquals(2, allocator.pageCount());
+
+        // The remainder of the split page is used before a third page.
+        for (int i = 1; i < (PAGE_SIZE / MIN_SLOT_SIZE) * (PAGE_SIZE / MIN_SLOT_SIZE); i++) {
+            assertEquals(1, allocator.allocate(MIN_SLOT_SIZE).page());
+        }
+        assertEquals(2, allocator.allocate(MIN_SLOT_SIZE).page());
+        assertEquals(3, allocator.pageCount());
+    }
+
+    @Test
+    void releasedPagesAreReused() {
+        AtlasAllocator allocator = new AtlasAllocator(PAGE_SIZE, MIN_SLOT_SIZE);
+        AtlasAllocator.Slot first = allocator.allocate(PAGE_SIZE);
+        AtlasAllocator.Slot second = allocator.allocate(PAGE_SIZE);
+        allocator.allocate(PAGE_SIZE);
+        assertEquals(3, allocator.pageCount());
+
+        assertThrows(IllegalStateException.class, () -> allocator.releasePage(first.page()));
+        allocator.free(second);
+        allocator.free(first);
+        allocator.releasePage(second.page());
+        allocator.releasePage(first.page());
+        assertEquals(1, allocator.pageCount());
+        assertFalse(allocator.isPageEmpty(first.page()));
+
+        // Released pages are not allocated from, new pages take the lowest released index.
+        assertEquals(new AtlasAllocator.Slot(0, 0, 0, 64), allocator.allocate(64));
+        assertEquals(0, allocator.allocate(64).page());
+        assertEquals(2, allocator.pageCount());
+        assertEquals(1, allocator.allocate(PAGE_SIZE).page());
+        assertEquals(3, allocator.allocate(PAGE_SIZE).page());
+        assertEquals(4, allocator.pageCount());
+    }
+}